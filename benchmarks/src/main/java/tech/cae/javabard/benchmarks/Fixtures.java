@@ -0,0 +1,175 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard.benchmarks;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.Modifier;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Types to generate from, and compilation of the generated code
+ *
+ * @author peter
+ */
+final class Fixtures {
+
+    static final String PACKAGE = "tech.cae.javabard.benchmarks.generated";
+    private static final TypeName[] FIELD_TYPES = new TypeName[]{
+        TypeName.INT,
+        TypeName.LONG,
+        TypeName.DOUBLE,
+        ClassName.get(String.class),
+        TypeName.BOOLEAN,
+        ParameterizedTypeName.get(List.class, String.class)
+    };
+
+    private Fixtures() {
+    }
+
+    /**
+     * A class with the given number of fields, cycling through int, long,
+     * double, String, boolean and List&lt;String&gt;
+     *
+     * @param name
+     * @param fields
+     * @param modifiers
+     * @return
+     */
+    static TypeSpec.Builder type(String name, int fields, Modifier... modifiers) {
+        TypeSpec.Builder type = TypeSpec.classBuilder(name).addModifiers(Modifier.PUBLIC);
+        for (int i = 0; i < fields; i++) {
+            type.addField(FieldSpec.builder(FIELD_TYPES[i % FIELD_TYPES.length], "field" + i, modifiers)
+                    .addJavadoc("field " + i)
+                    .build());
+        }
+        return type;
+    }
+
+    static TypeName fieldType(int i) {
+        return FIELD_TYPES[i % FIELD_TYPES.length];
+    }
+
+    /**
+     * Make the Builder nested in a type implement Supplier, so that benchmarks
+     * can call build() without reflection
+     *
+     * @param type a type that BuilderSpec has been applied to
+     * @return
+     */
+    static TypeSpec.Builder supplierBuilder(TypeSpec.Builder type) {
+        for (int i = 0; i < type.typeSpecs.size(); i++) {
+            TypeSpec nested = type.typeSpecs.get(i);
+            if ("Builder".equals(nested.name)) {
+                type.typeSpecs.set(i, nested.toBuilder()
+                        .addSuperinterface(ParameterizedTypeName.get(Supplier.class, Object.class))
+                        .addMethod(MethodSpec.methodBuilder("get")
+                                .addModifiers(Modifier.PUBLIC)
+                                .addAnnotation(Override.class)
+                                .returns(Object.class)
+                                .addStatement("return build()")
+                                .build())
+                        .build());
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Compile generated types and load them in a new class loader
+     *
+     * @param types
+     * @return
+     * @throws IOException
+     */
+    static ClassLoader compile(TypeSpec... types) throws IOException {
+        Path sources = Files.createTempDirectory("javabard-sources");
+        Path classes = Files.createTempDirectory("javabard-classes");
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(classes.toString());
+        arguments.add("-cp");
+        arguments.add(System.getProperty("java.class.path"));
+        for (TypeSpec type : types) {
+            JavaFile.builder(PACKAGE, type).build().writeTo(sources);
+        }
+        try (Stream<Path> files = Files.walk(sources)) {
+            arguments.addAll(files.filter(file -> file.toString().endsWith(".java"))
+                    .map(Path::toString)
+                    .collect(Collectors.toList()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Benchmarks of generated code must be run on a JDK");
+        }
+        if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("Generated code did not compile, see " + sources);
+        }
+        return new URLClassLoader(new URL[]{classes.toUri().toURL()}, Fixtures.class.getClassLoader());
+    }
+
+    static Class<?> load(ClassLoader loader, String name) throws ClassNotFoundException {
+        return loader.loadClass(PACKAGE + "." + name.replace('.', '$'));
+    }
+
+    static Object value(TypeName type, int i) {
+        if (TypeName.INT.equals(type)) {
+            return i;
+        } else if (TypeName.LONG.equals(type)) {
+            return (long) i;
+        } else if (TypeName.DOUBLE.equals(type)) {
+            return (double) i;
+        } else if (TypeName.BOOLEAN.equals(type)) {
+            return i % 2 == 0;
+        } else if (type instanceof ParameterizedTypeName) {
+            List<String> list = new ArrayList<>();
+            list.add("item" + i);
+            return list;
+        }
+        return "value" + i;
+    }
+
+    static Class<?> rawType(TypeName type) {
+        if (TypeName.INT.equals(type)) {
+            return int.class;
+        } else if (TypeName.LONG.equals(type)) {
+            return long.class;
+        } else if (TypeName.DOUBLE.equals(type)) {
+            return double.class;
+        } else if (TypeName.BOOLEAN.equals(type)) {
+            return boolean.class;
+        } else if (type instanceof ParameterizedTypeName) {
+            return List.class;
+        }
+        return String.class;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard.benchmarks;
+
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.lang.model.element.Modifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.cae.javabard.BuilderSpec;
+import tech.cae.javabard.EqualsSpec;
+
+/**
+ * Cost of the hashCode(), equals() and Builder.build() methods generated by
+ * EqualsSpec and BuilderSpec
+ *
+ * @author peter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedCodeBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int fields;
+
+    private Object value;
+    private Object equalValue;
+    private Object differentFirst;
+    private Object differentLast;
+    private Supplier<?> builder;
+
+    @Setup
+    public void setup() throws Exception {
+        TypeSpec.Builder type = Fixtures.type("Value", fields, Modifier.PRIVATE, Modifier.FINAL);
+        EqualsSpec.forType(type).build();
+        BuilderSpec.forType(Fixtures.PACKAGE, type).build();
+        ClassLoader loader = Fixtures.compile(Fixtures.supplierBuilder(type).build());
+        value = build(loader, -1).get();
+        equalValue = build(loader, -1).get();
+        differentFirst = build(loader, 0).get();
+        differentLast = build(loader, fields - 1).get();
+        builder = build(loader, -1);
+    }
+
+    private Supplier<?> build(ClassLoader loader, int different) throws Exception {
+        Class<?> builderClass = Fixtures.load(loader, "Value.Builder");
+        Object b = Fixtures.load(loader, "Value").getMethod("builder").invoke(null);
+        for (int i = 0; i < fields; i++) {
+            TypeName type = Fixtures.fieldType(i);
+            builderClass.getMethod("field" + i, Fixtures.rawType(type))
+                    .invoke(b, Fixtures.value(type, i == different ? i + 1 : i));
+        }
+        return (Supplier<?>) b;
+    }
+
+    @Benchmark
+    public int hashCodeValue() {
+        return value.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return value.equals(equalValue);
+    }
+
+    @Benchmark
+    public boolean equalsDifferentFirst() {
+        return value.equals(differentFirst);
+    }
+
+    @Benchmark
+    public boolean equalsDifferentLast() {
+        return value.equals(differentLast);
+    }
+
+    @Benchmark
+    public Object builderBuild() {
+        return builder.get();
+    }
+}
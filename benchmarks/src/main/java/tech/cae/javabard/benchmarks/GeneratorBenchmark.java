@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard.benchmarks;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.Modifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.cae.javabard.BuilderSpec;
+import tech.cae.javabard.CopySpec;
+import tech.cae.javabard.EqualsSpec;
+import tech.cae.javabard.GetterSpec;
+import tech.cae.javabard.InterfaceSpec;
+import tech.cae.javabard.SetterSpec;
+import tech.cae.javabard.VisitorSpec;
+
+/**
+ * Throughput of each spec, in types per second
+ *
+ * @author peter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int fields;
+
+    private TypeSpec mutableType;
+    private TypeSpec immutableType;
+    private TypeSpec treeType;
+
+    @Setup
+    public void setup() {
+        mutableType = Fixtures.type("Mutable", fields, Modifier.PRIVATE).build();
+        immutableType = Fixtures.type("Immutable", fields, Modifier.PRIVATE, Modifier.FINAL).build();
+        TypeSpec.Builder tree = Fixtures.type("Tree", fields, Modifier.PRIVATE);
+        tree.addField(ClassName.get(Fixtures.PACKAGE, "Tree"), "left", Modifier.PRIVATE);
+        tree.addField(ClassName.get(Fixtures.PACKAGE, "Tree"), "right", Modifier.PRIVATE);
+        treeType = tree.build();
+    }
+
+    @Benchmark
+    public TypeSpec getterSpec() {
+        return GetterSpec.forType(mutableType.toBuilder()).build().build();
+    }
+
+    @Benchmark
+    public TypeSpec setterSpec() {
+        return SetterSpec.forType(mutableType.toBuilder()).build().build();
+    }
+
+    @Benchmark
+    public TypeSpec equalsSpec() {
+        return EqualsSpec.forType(immutableType.toBuilder()).build().build();
+    }
+
+    @Benchmark
+    public TypeSpec builderSpec() {
+        return BuilderSpec.forType(Fixtures.PACKAGE, immutableType.toBuilder()).build().build();
+    }
+
+    @Benchmark
+    public TypeSpec copySpec() {
+        return CopySpec.forType(mutableType.toBuilder()).withName("Copy").build().build();
+    }
+
+    @Benchmark
+    public TypeSpec interfaceSpec() {
+        TypeSpec.Builder type = GetterSpec.forType(mutableType.toBuilder()).build();
+        return InterfaceSpec.forType(Fixtures.PACKAGE, type)
+                .withImplementingTypeNamingConvention("$NImpl")
+                .build()
+                .getImplementingType()
+                .build();
+    }
+
+    @Benchmark
+    public TypeSpec visitorSpec() {
+        TypeSpec.Builder type = treeType.toBuilder();
+        VisitorSpec.builder(Fixtures.PACKAGE, "Tree")
+                .withVisitingType(type)
+                .build();
+        return type.build();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard.benchmarks;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import javax.lang.model.element.Modifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.cae.javabard.BuilderSpec;
+import tech.cae.javabard.VisitorSpec;
+
+/**
+ * Cost of the traversal generated by VisitorSpec, over a deep tree (a chain of
+ * nodes) and a wide tree (a balanced binary tree) of the same size
+ *
+ * @author peter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @Param({"deep", "wide"})
+    public String shape;
+
+    @Param({"1023", "4095"})
+    public int nodes;
+
+    private Consumer<Object> root;
+    private Object visitor;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        ClassName node = ClassName.get(Fixtures.PACKAGE, "Node");
+        ClassName visitorName = ClassName.get(Fixtures.PACKAGE, "NodeVisitor");
+        TypeSpec.Builder type = TypeSpec.classBuilder("Node")
+                .addModifiers(Modifier.PUBLIC)
+                .addField(node, "left", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(node, "right", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(TypeName.INT, "value", Modifier.PRIVATE, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Consumer.class), visitorName))
+                .addMethod(MethodSpec.methodBuilder("accept")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addAnnotation(Override.class)
+                        .addParameter(visitorName, "visitor")
+                        .addStatement("visit(visitor)")
+                        .build());
+        BuilderSpec.forType(Fixtures.PACKAGE, type).build();
+        VisitorSpec.VisitorInterfaceAndBase visitorTypes = VisitorSpec.builder(Fixtures.PACKAGE, "Node")
+                .withVisitingType(type)
+                .build();
+        TypeSpec counting = TypeSpec.classBuilder("CountingVisitor")
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(ClassName.get(Fixtures.PACKAGE, "NodeVisitorBase"))
+                .addSuperinterface(IntSupplier.class)
+                .addField(TypeName.INT, "count", Modifier.PRIVATE)
+                .addMethod(MethodSpec.methodBuilder("enterNode")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addAnnotation(Override.class)
+                        .addParameter(node, "visited")
+                        .addStatement("count++")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("getAsInt")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addAnnotation(Override.class)
+                        .returns(TypeName.INT)
+                        .addStatement("int result = count")
+                        .addStatement("count = 0")
+                        .addStatement("return result")
+                        .build())
+                .build();
+        ClassLoader loader = Fixtures.compile(type.build(),
+                visitorTypes.getVisitor().build(),
+                visitorTypes.getBase().build(),
+                counting);
+        Class<?> nodeClass = Fixtures.load(loader, "Node");
+        Constructor<?> constructor = nodeClass.getDeclaredConstructor(nodeClass, nodeClass, int.class);
+        constructor.setAccessible(true);
+        root = (Consumer<Object>) ("deep".equals(shape) ? chain(constructor, nodes) : balanced(constructor, nodes));
+        visitor = Fixtures.load(loader, "CountingVisitor").getConstructor().newInstance();
+    }
+
+    private static Object chain(Constructor<?> constructor, int size) throws Exception {
+        Object node = null;
+        for (int i = 0; i < size; i++) {
+            node = constructor.newInstance(null, node, i);
+        }
+        return node;
+    }
+
+    private static Object balanced(Constructor<?> constructor, int size) throws Exception {
+        if (size == 0) {
+            return null;
+        }
+        int left = (size - 1) / 2;
+        return constructor.newInstance(balanced(constructor, left), balanced(constructor, size - 1 - left), size);
+    }
+
+    @Benchmark
+    public int visit() {
+        root.accept(visitor);
+        return ((IntSupplier) visitor).getAsInt();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.lang.model.element.Modifier;
+
+/**
+ * How generated getters and setters access a field that may be shared between
+ * threads
+ *
+ * @author peter
+ */
+public enum AccessMode {
+    /**
+     * Plain reads and writes
+     */
+    PLAIN,
+    /**
+     * The field is made volatile
+     */
+    VOLATILE,
+    /**
+     * The field is made volatile, and setters make a release store with
+     * lazySet, which is cheaper than a volatile write but may not be seen
+     * by other threads immediately
+     */
+    RELEASE,
+    /**
+     * The field is made volatile, and lazySet, compareAndSet, getAndSet and
+     * getAndUpdate methods are generated, backed by a static field updater
+     */
+    ATOMIC;
+
+    boolean isVolatile() {
+        return this != PLAIN;
+    }
+
+    boolean needsUpdater() {
+        return this == RELEASE || this == ATOMIC;
+    }
+
+    /**
+     * Make a field of a type volatile, if not already
+     *
+     * @param typeSpecBuilder
+     * @param fieldName
+     */
+    static void makeVolatile(TypeSpec.Builder typeSpecBuilder, String fieldName) {
+        for (int i = 0; i < typeSpecBuilder.fieldSpecs.size(); i++) {
+            FieldSpec field = typeSpecBuilder.fieldSpecs.get(i);
+            if (field.name.equals(fieldName) && !field.hasModifier(Modifier.VOLATILE)) {
+                if (field.hasModifier(Modifier.FINAL)) {
+                    throw new IllegalArgumentException("Final field " + fieldName + " cannot be made volatile");
+                }
+                typeSpecBuilder.fieldSpecs.set(i, field.toBuilder().addModifiers(Modifier.VOLATILE).build());
+            }
+        }
+    }
+
+    static String updaterName(String fieldName) {
+        return Names.constantName(fieldName) + "_UPDATER";
+    }
+
+    /**
+     * A static updater for a volatile instance field, declared in the class
+     * of the field. A reference updater is of the erasure of the field type,
+     * as that is what it is checked against when created.
+     *
+     * @param typeSpec the class of the field
+     * @param field
+     * @return
+     */
+    static FieldSpec makeUpdater(TypeSpec typeSpec, FieldSpec field) {
+        if (field.hasModifier(Modifier.STATIC)) {
+            throw new IllegalArgumentException("No field updater for static field " + field.name);
+        }
+        ClassName owner = ClassName.get("", typeSpec.name);
+        if (TypeName.INT.equals(field.type)) {
+            return FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(AtomicIntegerFieldUpdater.class), owner),
+                    updaterName(field.name), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.newUpdater($T.class, $S)", AtomicIntegerFieldUpdater.class, owner, field.name)
+                    .build();
+        } else if (TypeName.LONG.equals(field.type)) {
+            return FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(AtomicLongFieldUpdater.class), owner),
+                    updaterName(field.name), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.newUpdater($T.class, $S)", AtomicLongFieldUpdater.class, owner, field.name)
+                    .build();
+        } else if (field.type.isPrimitive()) {
+            throw new IllegalArgumentException("No field updater for " + field.name + " of type " + field.type);
+        }
+        TypeName rawType = erasure(field.type, typeSpec.typeVariables);
+        return FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(AtomicReferenceFieldUpdater.class), owner, rawType),
+                updaterName(field.name), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.newUpdater($T.class, $T.class, $S)", AtomicReferenceFieldUpdater.class, owner, rawType, field.name)
+                .build();
+    }
+
+    /**
+     * The erasure of a type: the raw type of a parameterized type, and the
+     * erasure of the first bound of a type variable, or Object
+     *
+     * @param type
+     * @param typeVariables declared type variables, whose bounds are used in
+     * place of those of a type variable named in the type
+     * @return
+     */
+    static TypeName erasure(TypeName type, List<TypeVariableName> typeVariables) {
+        if (type instanceof ParameterizedTypeName) {
+            return ((ParameterizedTypeName) type).rawType;
+        } else if (type instanceof ArrayTypeName) {
+            return ArrayTypeName.of(erasure(((ArrayTypeName) type).componentType, typeVariables));
+        } else if (type instanceof TypeVariableName) {
+            TypeVariableName variable = (TypeVariableName) type;
+            for (TypeVariableName declared : typeVariables) {
+                if (declared.name.equals(variable.name)) {
+                    variable = declared;
+                    break;
+                }
+            }
+            return variable.bounds.isEmpty() ? TypeName.OBJECT : erasure(variable.bounds.get(0), typeVariables);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Apply a sequence of specs to many types in parallel on a fork-join pool.
+ *
+ * Each type is processed independently by running every stage in order on a
+ * copy of it, so stages must only modify the TypeSpec.Builder they are given.
+ * The builders added are never modified, so build() and writeTo() may be
+ * called any number of times.
+ * Results are always returned in the order the types were added, whatever
+ * the parallelism.
+ *
+ * With an incremental cache, each type is hashed together with a
+ * configuration string describing the stages before any stage is run. Types
+ * whose hash matches the on-disk index, and whose output file still exists,
+ * are neither regenerated nor rewritten. Files whose content has not changed
+ * are never rewritten, so their timestamps are preserved.
+ *
+ * @author peter
+ */
+public class BatchSpec {
+
+    public static BatchSpec.Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final List<BatchType> types = new ArrayList<>();
+        private final List<BiFunction<String, TypeSpec.Builder, TypeSpec.Builder>> stages = new ArrayList<>();
+        private int parallelism = 0;
+        private ForkJoinPool pool = null;
+        private Path index = null;
+        private String configuration = "";
+
+        Builder() {
+        }
+
+        public Builder withType(String packageName, TypeSpec.Builder type) {
+            types.add(new BatchType(packageName, type));
+            return this;
+        }
+
+        public Builder withTypes(String packageName, Collection<TypeSpec.Builder> typeSpecBuilders) {
+            typeSpecBuilders.forEach(type -> withType(packageName, type));
+            return this;
+        }
+
+        /**
+         * Add a stage, e.g. {@code b -> GetterSpec.forType(b).build()}
+         *
+         * @param stage
+         * @return
+         */
+        public Builder withStage(UnaryOperator<TypeSpec.Builder> stage) {
+            stages.add((packageName, type) -> stage.apply(type));
+            return this;
+        }
+
+        /**
+         * Add a stage that needs the package of the type, e.g.
+         * {@code (p, b) -> BuilderSpec.forType(p, b).build()}
+         *
+         * @param stage
+         * @return
+         */
+        public Builder withStage(BiFunction<String, TypeSpec.Builder, TypeSpec.Builder> stage) {
+            stages.add(stage);
+            return this;
+        }
+
+        /**
+         * Run on a dedicated pool with the given number of threads, rather
+         * than the common pool.
+         *
+         * @param threads
+         * @return
+         */
+        public Builder withParallelism(int threads) {
+            this.parallelism = threads;
+            this.pool = null;
+            return this;
+        }
+
+        public Builder withPool(ForkJoinPool pool) {
+            this.pool = pool;
+            this.parallelism = 0;
+            return this;
+        }
+
+        /**
+         * Skip types that have not changed since the last call to
+         * {@link #writeTo(Path)}.
+         *
+         * @param index file in which to keep the hash of each type
+         * @param configuration a description of the stages (e.g. a version
+         * and their options) that changes whenever their output would change
+         * @return
+         */
+        public Builder withIncrementalCache(Path index, String configuration) {
+            this.index = index;
+            this.configuration = configuration;
+            return this;
+        }
+
+        /**
+         * Apply the stages to every type
+         *
+         * @return the generated files, in the order the types were added
+         */
+        public List<JavaFile> build() {
+            return run(() -> types.parallelStream()
+                    .map(this::generate)
+                    .collect(Collectors.toList()));
+        }
+
+        /**
+         * Apply the stages to every type and write the results
+         *
+         * @param directory
+         * @return the generated files, in the order the types were added,
+         * excluding any that were skipped by the incremental cache
+         * @throws IOException
+         */
+        public List<JavaFile> writeTo(Path directory) throws IOException {
+            Map<String, String> previous = readIndex();
+            Map<String, String> current = new ConcurrentHashMap<>();
+            List<JavaFile> files;
+            try {
+                files = run(() -> types.parallelStream()
+                        .map(type -> generateIfChanged(type, directory, previous, current))
+                        .filter(Objects::nonNull)
+                        .map(javaFile -> write(javaFile, directory))
+                        .collect(Collectors.toList()));
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            writeIndex(current);
+            return files;
+        }
+
+        private JavaFile generateIfChanged(BatchType type, Path directory, Map<String, String> previous, Map<String, String> current) {
+            if (index == null) {
+                return generate(type);
+            }
+            TypeSpec typeSpec = type.typeSpecBuilder.build();
+            String key = type.packageName.isEmpty() ? typeSpec.name : type.packageName + "." + typeSpec.name;
+            String hash = hash(type.packageName, typeSpec);
+            current.put(key, hash);
+            if (hash.equals(previous.get(key)) && Files.exists(outputFile(directory, type.packageName, typeSpec.name))) {
+                return null;
+            }
+            return generate(type);
+        }
+
+        private String hash(String packageName, TypeSpec typeSpec) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update((configuration + "\n" + stages.size() + "\n" + packageName + "\n" + typeSpec).getBytes(StandardCharsets.UTF_8));
+                StringBuilder sb = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    sb.append(String.format("%02x", b));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private Map<String, String> readIndex() throws IOException {
+            Map<String, String> entries = new HashMap<>();
+            if (index != null && Files.exists(index)) {
+                Properties properties = new Properties();
+                try (Reader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+                properties.stringPropertyNames().forEach(name -> entries.put(name, properties.getProperty(name)));
+            }
+            return entries;
+        }
+
+        private void writeIndex(Map<String, String> entries) throws IOException {
+            if (index != null) {
+                if (index.getParent() != null) {
+                    Files.createDirectories(index.getParent());
+                }
+                Files.write(index, new TreeMap<>(entries).entrySet().stream()
+                        .map(entry -> entry.getKey() + "=" + entry.getValue())
+                        .collect(Collectors.toList()), StandardCharsets.UTF_8);
+            }
+        }
+
+        private JavaFile generate(BatchType type) {
+            TypeSpec.Builder typeSpecBuilder = type.typeSpecBuilder.build().toBuilder();
+            for (BiFunction<String, TypeSpec.Builder, TypeSpec.Builder> stage : stages) {
+                typeSpecBuilder = stage.apply(type.packageName, typeSpecBuilder);
+            }
+            return JavaFile.builder(type.packageName, typeSpecBuilder.build()).build();
+        }
+
+        private static JavaFile write(JavaFile javaFile, Path directory) {
+            try {
+                Path file = outputFile(directory, javaFile.packageName, javaFile.typeSpec.name);
+                byte[] content = javaFile.toString().getBytes(StandardCharsets.UTF_8);
+                if (!Files.exists(file) || !Arrays.equals(content, Files.readAllBytes(file))) {
+                    Files.createDirectories(file.getParent());
+                    Files.write(file, content);
+                }
+                return javaFile;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private static Path outputFile(Path directory, String packageName, String name) {
+            Path file = directory;
+            if (!packageName.isEmpty()) {
+                for (String component : packageName.split("\\.")) {
+                    file = file.resolve(component);
+                }
+            }
+            return file.resolve(name + ".java");
+        }
+
+        private <T> T run(Callable<T> task) {
+            ForkJoinPool runner = pool;
+            if (runner == null) {
+                runner = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+            }
+            try {
+                return runner.submit(task).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                throw new IllegalStateException(ex.getCause());
+            } finally {
+                if (runner != pool && runner != ForkJoinPool.commonPool()) {
+                    runner.shutdown();
+                }
+            }
+        }
+    }
+
+    static class BatchType {
+
+        private final String packageName;
+        private final TypeSpec.Builder typeSpecBuilder;
+
+        BatchType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpecBuilder = typeSpecBuilder;
+        }
+    }
+}
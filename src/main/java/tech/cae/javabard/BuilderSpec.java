@@ -19,10 +19,12 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 import javax.lang.model.element.Modifier;
 
 /**
@@ -45,11 +47,13 @@ public class BuilderSpec {
         private Modifier[] buildModifiers = new Modifier[]{Modifier.PUBLIC, Modifier.FINAL};
         private final List<MethodSpec> additionalMethods = new ArrayList<>();
         private final List<FieldSpec> additionalFields = new ArrayList<>();
+        private boolean reusable = false;
+        private boolean threadLocal = false;
 
         Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
             this.packageName = packageName;
             this.typeSpecBuilder = typeSpecBuilder;
-            this.typeSpec = typeSpecBuilder.build();
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
         }
 
         public Builder withBuildMethodModifiers(Modifier... mods) {
@@ -72,6 +76,29 @@ public class BuilderSpec {
             return this;
         }
 
+        /**
+         * Add reset() and from(target) methods to the Builder, so that one
+         * Builder can assemble many instances
+         *
+         * @return
+         */
+        public Builder withReusableBuilder() {
+            reusable = true;
+            return this;
+        }
+
+        /**
+         * Add a static localBuilder() method returning a reset, reusable
+         * Builder held per thread. Additional fields are not set.
+         *
+         * @return
+         */
+        public Builder withThreadLocalBuilder() {
+            reusable = true;
+            threadLocal = true;
+            return this;
+        }
+
         public TypeName getTargetClassName() {
             return ClassName.get(packageName, typeSpec.name);
         }
@@ -85,17 +112,27 @@ public class BuilderSpec {
             builder.addMethod(MethodSpec.constructorBuilder().build());
             builder.addModifiers(Modifier.PUBLIC, Modifier.FINAL, Modifier.STATIC);
             MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
-            TypeSpec classSpec = typeSpecBuilder.build();
+            TypeSpec classSpec = TypeSpecSnapshot.of(typeSpecBuilder);
             ClassName builderName = ClassName.get(packageName, classSpec.name, builderClassName);
             StringBuilder constructorStatement = new StringBuilder("return new $N(");
             List<Object> constructorObjects = new ArrayList<>();
             constructorObjects.add(getTargetClassName().toString());
-            for (int i = 0; i < classSpec.fieldSpecs.size(); i++) {
+            MethodSpec.Builder reset = MethodSpec.methodBuilder("reset")
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .returns(builderName);
+            MethodSpec.Builder from = MethodSpec.methodBuilder("from")
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addParameter(ClassName.get(packageName, classSpec.name), "value")
+                    .returns(builderName);
+            List<FieldSpec> fields = classSpec.fieldSpecs.stream()
+                    .filter(field -> !EqualsSpec.isHashCodeCache(field) && !SetterSpec.isDirtyTracking(field))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < fields.size(); i++) {
                 FieldSpec field = FieldSpec.builder(
-                        classSpec.fieldSpecs.get(i).type,
-                        classSpec.fieldSpecs.get(i).name)
+                        fields.get(i).type,
+                        fields.get(i).name)
                         .addModifiers(Modifier.PRIVATE)
-                        .addJavadoc(classSpec.fieldSpecs.get(i).javadoc)
+                        .addJavadoc(fields.get(i).javadoc)
                         .build();
                 builder.addField(field);
                 builder.addMethod(builderGetter(field));
@@ -103,10 +140,12 @@ public class BuilderSpec {
                 constructor.addParameter(field.type, field.name);
                 constructor.addStatement("this.$N = $N", field.name, field.name);
                 constructorStatement.append("$N");
-                if (i < classSpec.fieldSpecs.size() - 1) {
+                if (i < fields.size() - 1) {
                     constructorStatement.append(",");
                 }
                 constructorObjects.add(field.name);
+                reset.addStatement("this.$N = $L", field.name, Names.defaultValue(field.type));
+                from.addStatement("this.$N = value.$N", field.name, field.name);
             }
             constructorStatement.append(")");
             builder.addMethod(MethodSpec.methodBuilder("build")
@@ -114,6 +153,10 @@ public class BuilderSpec {
                     .addStatement(constructorStatement.toString(), constructorObjects.toArray())
                     .returns(ClassName.get(packageName, classSpec.name))
                     .build());
+            if (reusable) {
+                builder.addMethod(reset.addStatement("return this").build());
+                builder.addMethod(from.addStatement("return this").build());
+            }
             additionalMethods.forEach((additionalMethod) -> {
                 builder.addMethod(additionalMethod);
             });
@@ -134,6 +177,19 @@ public class BuilderSpec {
             builderMethod.addStatement("return builder");
             typeSpecBuilder.addType(builder.build());
             typeSpecBuilder.addMethod(builderMethod.build());
+            if (threadLocal) {
+                ParameterizedTypeName localType = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), builderName);
+                typeSpecBuilder.addField(FieldSpec.builder(localType, "LOCAL_BUILDER", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.withInitial($T::new)", ThreadLocal.class, builderName)
+                        .build());
+                typeSpecBuilder.addMethod(MethodSpec.methodBuilder("localBuilder")
+                        .addModifiers(Modifier.PUBLIC, Modifier.FINAL, Modifier.STATIC)
+                        .addAnnotation(JsonIgnore.class)
+                        .addJavadoc("@return the reset Builder of the current thread, which must not be shared\n")
+                        .returns(builderName)
+                        .addStatement("return LOCAL_BUILDER.get().reset()")
+                        .build());
+            }
             typeSpecBuilder.addMethod(constructor.build());
             return typeSpecBuilder;
         }
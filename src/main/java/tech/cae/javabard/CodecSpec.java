@@ -0,0 +1,362 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate binary writeTo and readFrom methods for the fields of a class, for
+ * both ByteBuffer and DataOutput/DataInput.
+ *
+ * Primitives are written in the byte order of the buffer, or big endian for
+ * streams. Strings and byte arrays are written as a length, or -1 for null,
+ * followed by the UTF-8 encoded characters or the bytes. Fields of other
+ * generated types registered with withCodecType are written with their own
+ * writeTo method after a presence byte. Static and transient fields are not
+ * written.
+ *
+ * readFrom methods decode into an existing instance, reusing nested instances
+ * where present, and are added to the class if none of its fields are final.
+ * For immutable classes, getBuilderMethods returns equivalent readFrom methods
+ * for the Builder generated by BuilderSpec.
+ *
+ * @author peter
+ */
+public class CodecSpec {
+
+    private static final ClassName BUFFER = ClassName.get(ByteBuffer.class);
+    private static final ClassName OUTPUT = ClassName.get(DataOutput.class);
+    private static final ClassName INPUT = ClassName.get(DataInput.class);
+    private static final TypeName BYTES = ArrayTypeName.of(TypeName.BYTE);
+
+    public static CodecSpec.Builder forType(TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(typeSpecBuilder);
+    }
+
+    public static class Builder {
+
+        private final TypeSpec.Builder typeSpecBuilder;
+        private final TypeSpec typeSpec;
+        private final Set<TypeName> codecTypes = new HashSet<>();
+        private boolean varInts = false;
+
+        Builder(TypeSpec.Builder typeSpecBuilder) {
+            this.typeSpecBuilder = typeSpecBuilder;
+            this.typeSpec = TypeSpecSnapshot.of(this.typeSpecBuilder);
+        }
+
+        /**
+         * Write int and long fields as zig-zag encoded variable length
+         * integers, which take fewer bytes for values of small magnitude
+         *
+         * @return
+         */
+        public Builder withVarInts() {
+            this.varInts = true;
+            return this;
+        }
+
+        /**
+         * Register a type that has had a CodecSpec applied, so that fields of
+         * that type can be written. Reading into a null field requires the
+         * type to have a no-argument constructor and readFrom methods.
+         *
+         * @param type
+         * @return
+         */
+        public Builder withCodecType(TypeName type) {
+            this.codecTypes.add(type);
+            return this;
+        }
+
+        /**
+         * readFrom methods for a Builder of this class, for use with
+         * BuilderSpec.Builder.withAdditionalMethod. Nested instances are always
+         * newly allocated, as the Builder shares them with what it builds.
+         *
+         * @param builderClassName
+         * @return
+         */
+        public List<MethodSpec> getBuilderMethods(TypeName builderClassName) {
+            List<MethodSpec> methods = new ArrayList<>();
+            methods.add(makeRead(BUFFER, builderClassName, false));
+            methods.add(makeRead(INPUT, builderClassName, false));
+            return methods;
+        }
+
+        public TypeSpec.Builder build() {
+            this.typeSpecBuilder.addMethod(makeWrite(BUFFER));
+            this.typeSpecBuilder.addMethod(makeWrite(OUTPUT));
+            if (getFields().stream().noneMatch(field -> field.hasModifier(Modifier.FINAL))) {
+                this.typeSpecBuilder.addMethod(makeRead(BUFFER, TypeName.VOID, true));
+                this.typeSpecBuilder.addMethod(makeRead(INPUT, TypeName.VOID, true));
+            }
+            Set<TypeName> types = new HashSet<>();
+            for (FieldSpec field : getFields()) {
+                types.add(field.type);
+            }
+            if (types.contains(ClassName.get(String.class))) {
+                this.typeSpecBuilder.addMethod(makeEncodeString(BUFFER));
+                this.typeSpecBuilder.addMethod(makeEncodeString(OUTPUT));
+                this.typeSpecBuilder.addMethod(makeDecodeString(BUFFER));
+                this.typeSpecBuilder.addMethod(makeDecodeString(INPUT));
+            }
+            if (types.contains(BYTES)) {
+                this.typeSpecBuilder.addMethod(makeEncodeBytes(BUFFER));
+                this.typeSpecBuilder.addMethod(makeEncodeBytes(OUTPUT));
+                this.typeSpecBuilder.addMethod(makeDecodeBytes(BUFFER));
+                this.typeSpecBuilder.addMethod(makeDecodeBytes(INPUT));
+            }
+            types.retainAll(Arrays.asList(TypeName.INT, TypeName.LONG, ClassName.get(String.class), BYTES));
+            if (varInts && !types.isEmpty()) {
+                this.typeSpecBuilder.addMethod(makeEncodeVarLong(BUFFER));
+                this.typeSpecBuilder.addMethod(makeEncodeVarLong(OUTPUT));
+                this.typeSpecBuilder.addMethod(makeDecodeVarLong(BUFFER));
+                this.typeSpecBuilder.addMethod(makeDecodeVarLong(INPUT));
+                this.typeSpecBuilder.addMethod(MethodSpec.methodBuilder("zigZag")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .addParameter(TypeName.LONG, "value")
+                        .returns(TypeName.LONG)
+                        .addStatement("return (value >>> 1) ^ -(value & 1)")
+                        .build());
+            }
+            return this.typeSpecBuilder;
+        }
+
+        private List<FieldSpec> getFields() {
+            List<FieldSpec> fields = new ArrayList<>();
+            for (FieldSpec field : this.typeSpec.fieldSpecs) {
+                if (field.hasModifier(Modifier.STATIC) || field.hasModifier(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (!field.type.isPrimitive() && !field.type.equals(ClassName.get(String.class))
+                        && !field.type.equals(BYTES) && !this.codecTypes.contains(field.type)) {
+                    throw new IllegalArgumentException("No codec for field " + field.name + " of type " + field.type);
+                }
+                fields.add(field);
+            }
+            return fields;
+        }
+
+        private MethodSpec makeWrite(ClassName channel) {
+            String name = channel.equals(BUFFER) ? "buffer" : "out";
+            MethodSpec.Builder method = MethodSpec.methodBuilder("writeTo")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(channel, name);
+            if (!channel.equals(BUFFER)) {
+                method.addException(IOException.class);
+            }
+            for (FieldSpec field : getFields()) {
+                if (field.type.isPrimitive()) {
+                    method.addStatement(writePrimitive(channel, name, field.type, CodeBlock.of("this.$N", field.name)));
+                } else if (this.codecTypes.contains(field.type)) {
+                    method.beginControlFlow("if (this.$N == null)", field.name)
+                            .addStatement(channel.equals(BUFFER) ? "$N.put((byte) 0)" : "$N.writeByte(0)", name)
+                            .nextControlFlow("else")
+                            .addStatement(channel.equals(BUFFER) ? "$N.put((byte) 1)" : "$N.writeByte(1)", name)
+                            .addStatement("this.$N.writeTo($N)", field.name, name)
+                            .endControlFlow();
+                } else {
+                    method.addStatement("$N($N, this.$N)", field.type.equals(BYTES) ? "encodeBytes" : "encodeString", name, field.name);
+                }
+            }
+            return method.build();
+        }
+
+        private MethodSpec makeRead(ClassName channel, TypeName returns, boolean reuse) {
+            String name = channel.equals(BUFFER) ? "buffer" : "in";
+            MethodSpec.Builder method = MethodSpec.methodBuilder("readFrom")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(channel, name)
+                    .returns(returns);
+            if (!channel.equals(BUFFER)) {
+                method.addException(IOException.class);
+            }
+            for (FieldSpec field : getFields()) {
+                if (field.type.isPrimitive()) {
+                    method.addStatement("this.$N = $L", field.name, readPrimitive(channel, name, field.type));
+                } else if (this.codecTypes.contains(field.type)) {
+                    method.beginControlFlow(channel.equals(BUFFER) ? "if ($N.get() == 0)" : "if ($N.readByte() == 0)", name)
+                            .addStatement("this.$N = null", field.name)
+                            .nextControlFlow("else");
+                    if (reuse) {
+                        method.beginControlFlow("if (this.$N == null)", field.name)
+                                .addStatement("this.$N = new $T()", field.name, field.type)
+                                .endControlFlow();
+                    } else {
+                        method.addStatement("this.$N = new $T()", field.name, field.type);
+                    }
+                    method.addStatement("this.$N.readFrom($N)", field.name, name)
+                            .endControlFlow();
+                } else {
+                    method.addStatement("this.$N = $N($N)", field.name, field.type.equals(BYTES) ? "decodeBytes" : "decodeString", name);
+                }
+            }
+            if (!TypeName.VOID.equals(returns)) {
+                method.addStatement("return this");
+            }
+            return method.build();
+        }
+
+        private CodeBlock writePrimitive(ClassName channel, String name, TypeName type, CodeBlock value) {
+            boolean buffer = channel.equals(BUFFER);
+            if (varInts && TypeName.INT.equals(type)) {
+                return CodeBlock.of("encodeVarLong($N, (($L << 1) ^ ($L >> 31)) & 0xFFFFFFFFL)", name, value, value);
+            } else if (varInts && TypeName.LONG.equals(type)) {
+                return CodeBlock.of("encodeVarLong($N, ($L << 1) ^ ($L >> 63))", name, value, value);
+            } else if (TypeName.BOOLEAN.equals(type)) {
+                return buffer
+                        ? CodeBlock.of("$N.put((byte) ($L ? 1 : 0))", name, value)
+                        : CodeBlock.of("$N.writeBoolean($L)", name, value);
+            } else if (TypeName.BYTE.equals(type)) {
+                return buffer
+                        ? CodeBlock.of("$N.put($L)", name, value)
+                        : CodeBlock.of("$N.writeByte($L)", name, value);
+            }
+            return CodeBlock.of(buffer ? "$N.put$L($L)" : "$N.write$L($L)", name, Names.prefix(type), value);
+        }
+
+        private CodeBlock readPrimitive(ClassName channel, String name, TypeName type) {
+            boolean buffer = channel.equals(BUFFER);
+            if (varInts && TypeName.INT.equals(type)) {
+                return CodeBlock.of("(int) zigZag(decodeVarLong($N))", name);
+            } else if (varInts && TypeName.LONG.equals(type)) {
+                return CodeBlock.of("zigZag(decodeVarLong($N))", name);
+            } else if (TypeName.BOOLEAN.equals(type)) {
+                return buffer
+                        ? CodeBlock.of("$N.get() != 0", name)
+                        : CodeBlock.of("$N.readBoolean()", name);
+            } else if (TypeName.BYTE.equals(type)) {
+                return buffer
+                        ? CodeBlock.of("$N.get()", name)
+                        : CodeBlock.of("$N.readByte()", name);
+            }
+            return CodeBlock.of(buffer ? "$N.get$L()" : "$N.read$L()", name, Names.prefix(type));
+        }
+
+        private MethodSpec makeEncodeVarLong(ClassName channel) {
+            boolean buffer = channel.equals(BUFFER);
+            MethodSpec.Builder method = MethodSpec.methodBuilder("encodeVarLong")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(channel, "channel")
+                    .addParameter(TypeName.LONG, "value")
+                    .addStatement("long remaining = value")
+                    .beginControlFlow("while ((remaining & ~0x7FL) != 0)")
+                    .addStatement(buffer ? "channel.put((byte) ((remaining & 0x7F) | 0x80))" : "channel.writeByte((int) ((remaining & 0x7F) | 0x80))")
+                    .addStatement("remaining >>>= 7")
+                    .endControlFlow()
+                    .addStatement(buffer ? "channel.put((byte) remaining)" : "channel.writeByte((int) remaining)");
+            if (!buffer) {
+                method.addException(IOException.class);
+            }
+            return method.build();
+        }
+
+        private MethodSpec makeDecodeVarLong(ClassName channel) {
+            boolean buffer = channel.equals(BUFFER);
+            MethodSpec.Builder method = MethodSpec.methodBuilder("decodeVarLong")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(channel, "channel")
+                    .returns(TypeName.LONG)
+                    .addStatement("long value = 0")
+                    .addStatement("int shift = 0")
+                    .addStatement("byte b")
+                    .beginControlFlow("do")
+                    .addStatement(buffer ? "b = channel.get()" : "b = channel.readByte()")
+                    .addStatement("value |= (long) (b & 0x7F) << shift")
+                    .addStatement("shift += 7")
+                    .endControlFlow("while (b < 0)")
+                    .addStatement("return value");
+            if (!buffer) {
+                method.addException(IOException.class);
+            }
+            return method.build();
+        }
+
+        private MethodSpec makeEncodeString(ClassName channel) {
+            return makeEncodeBytes(channel, "encodeString", ClassName.get(String.class),
+                    CodeBlock.of("value.getBytes($T.UTF_8)", StandardCharsets.class));
+        }
+
+        private MethodSpec makeEncodeBytes(ClassName channel) {
+            return makeEncodeBytes(channel, "encodeBytes", BYTES, CodeBlock.of("value"));
+        }
+
+        private MethodSpec makeEncodeBytes(ClassName channel, String name, TypeName type, CodeBlock bytes) {
+            boolean buffer = channel.equals(BUFFER);
+            MethodSpec.Builder method = MethodSpec.methodBuilder(name)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(channel, "channel")
+                    .addParameter(type, "value")
+                    .beginControlFlow("if (value == null)")
+                    .addStatement(writePrimitive(channel, "channel", TypeName.INT, CodeBlock.of("-1")))
+                    .nextControlFlow("else")
+                    .addStatement("byte[] bytes = $L", bytes)
+                    .addStatement(writePrimitive(channel, "channel", TypeName.INT, CodeBlock.of("bytes.length")))
+                    .addStatement(buffer ? "channel.put(bytes)" : "channel.write(bytes)")
+                    .endControlFlow();
+            if (!buffer) {
+                method.addException(IOException.class);
+            }
+            return method.build();
+        }
+
+        private MethodSpec makeDecodeString(ClassName channel) {
+            return makeDecodeBytes(channel, "decodeString", ClassName.get(String.class),
+                    CodeBlock.of("new $T(bytes, $T.UTF_8)", String.class, StandardCharsets.class));
+        }
+
+        private MethodSpec makeDecodeBytes(ClassName channel) {
+            return makeDecodeBytes(channel, "decodeBytes", BYTES, CodeBlock.of("bytes"));
+        }
+
+        private MethodSpec makeDecodeBytes(ClassName channel, String name, TypeName type, CodeBlock value) {
+            boolean buffer = channel.equals(BUFFER);
+            MethodSpec.Builder method = MethodSpec.methodBuilder(name)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(channel, "channel")
+                    .returns(type)
+                    .addStatement("int length = $L", readPrimitive(channel, "channel", TypeName.INT))
+                    .beginControlFlow("if (length < 0)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addStatement("byte[] bytes = new byte[length]")
+                    .addStatement(buffer ? "channel.get(bytes)" : "channel.readFully(bytes)")
+                    .addStatement("return $L", value);
+            if (!buffer) {
+                method.addException(IOException.class);
+            }
+            return method.build();
+        }
+    }
+}
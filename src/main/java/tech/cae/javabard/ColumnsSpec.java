@@ -0,0 +1,305 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate a columnar (struct of arrays) container for a class, which stores
+ * each instance field in its own array.
+ *
+ * Records are accessed by index, or through a reusable Cursor that has the
+ * same getters and setters as the class. Appending an instance of the class
+ * uses its getters. The class may not have instance fields named size or
+ * capacity.
+ *
+ * @author peter
+ */
+public class ColumnsSpec {
+
+    /**
+     * Names of the fields the columns class keeps its own state in
+     */
+    private static final Set<String> RESERVED_NAMES = new HashSet<>(Arrays.asList("size", "capacity"));
+
+    public static ColumnsSpec.Builder forType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(packageName, typeSpecBuilder);
+    }
+
+    public static class Builder {
+
+        private final String packageName;
+        private final TypeSpec typeSpec;
+        private String namingConvention = "$NColumns";
+        private String getterNamingConvention = "get$N";
+        private String setterNamingConvention = "set$N";
+
+        Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
+        }
+
+        public Builder withNamingConvention(String n) {
+            this.namingConvention = n;
+            return this;
+        }
+
+        public Builder withGetterNamingConvention(String n) {
+            this.getterNamingConvention = n;
+            return this;
+        }
+
+        public Builder withSetterNamingConvention(String n) {
+            this.setterNamingConvention = n;
+            return this;
+        }
+
+        public ClassName getColumnsClassName() {
+            return ClassName.get(packageName, namingConvention.replace("$N", typeSpec.name));
+        }
+
+        private TypeName getTargetTypeName() {
+            ClassName target = ClassName.get(packageName, typeSpec.name);
+            return typeSpec.typeVariables.isEmpty()
+                    ? target
+                    : ParameterizedTypeName.get(target, typeSpec.typeVariables.toArray(new TypeName[0]));
+        }
+
+        public TypeSpec.Builder build() {
+            ClassName columnsName = getColumnsClassName();
+            ClassName cursorName = columnsName.nestedClass("Cursor");
+            TypeName target = getTargetTypeName();
+            List<FieldSpec> fields = new ArrayList<>();
+            typeSpec.fieldSpecs.stream()
+                    .filter(field -> !field.hasModifier(Modifier.STATIC))
+                    .forEach(fields::add);
+            for (FieldSpec field : fields) {
+                if (RESERVED_NAMES.contains(field.name)) {
+                    throw new IllegalArgumentException("Field " + field.name + " of " + typeSpec.name
+                            + " clashes with the " + field.name + " of the columns");
+                }
+            }
+            TypeSpec.Builder columns = TypeSpec.classBuilder(columnsName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addTypeVariables(typeSpec.typeVariables)
+                    .addJavadoc("Columnar storage of $L records\n", typeSpec.name);
+            TypeSpec.Builder cursor = TypeSpec.classBuilder(cursorName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addJavadoc("Reusable view of one record\n")
+                    .addField(FieldSpec.builder(TypeName.INT, "index", Modifier.PRIVATE)
+                            .initializer("-1")
+                            .build());
+            MethodSpec.Builder allocate = MethodSpec.methodBuilder("allocate")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(TypeName.INT, "capacity");
+            MethodSpec.Builder grow = MethodSpec.methodBuilder("ensureCapacity")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(TypeName.INT, "capacity")
+                    .beginControlFlow("if (capacity > this.capacity)")
+                    .addStatement("int newCapacity = $T.max(capacity, this.capacity + (this.capacity >> 1) + 1)", Math.class);
+            MethodSpec.Builder clear = MethodSpec.methodBuilder("clear")
+                    .addModifiers(Modifier.PUBLIC);
+            MethodSpec.Builder appendValues = MethodSpec.methodBuilder("append")
+                    .addJavadoc("@return the index of the new record\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.INT)
+                    .addStatement("ensureCapacity(size + 1)");
+            MethodSpec.Builder appendInstance = MethodSpec.methodBuilder("append")
+                    .addJavadoc("@return the index of the new record\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(target, "value")
+                    .returns(TypeName.INT)
+                    .addStatement("ensureCapacity(size + 1)");
+            List<MethodSpec> accessors = new ArrayList<>();
+            for (FieldSpec field : fields) {
+                boolean erased = !isReifiable(field.type);
+                TypeName arrayType = ArrayTypeName.of(erased ? TypeName.OBJECT : field.type);
+                String getterName = Names.accessorName(getterNamingConvention, field.name);
+                String setterName = Names.accessorName(setterNamingConvention, field.name);
+                columns.addField(arrayType, field.name, Modifier.PRIVATE);
+                allocate.addStatement("this.$N = $L", field.name, newArray(erased ? TypeName.OBJECT : field.type, "capacity"));
+                grow.addStatement("this.$N = $T.copyOf(this.$N, newCapacity)", field.name, Arrays.class, field.name);
+                if (!field.type.isPrimitive()) {
+                    clear.addStatement("$T.fill(this.$N, 0, size, null)", Arrays.class, field.name);
+                }
+                appendValues.addParameter(field.type, field.name);
+                appendValues.addStatement("this.$N[size] = $N", field.name, field.name);
+                appendInstance.addStatement("this.$N[size] = value.$N()", field.name, getterName);
+                MethodSpec.Builder getter = MethodSpec.methodBuilder(getterName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(TypeName.INT, "index")
+                        .returns(field.type)
+                        .addStatement("checkIndex(index)");
+                MethodSpec.Builder cursorGetter = MethodSpec.methodBuilder(getterName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(field.type)
+                        .addStatement("checkIndex(index)");
+                if (erased) {
+                    AnnotationSpec unchecked = AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+                    getter.addAnnotation(unchecked).addStatement("return ($T) this.$N[index]", field.type, field.name);
+                    cursorGetter.addAnnotation(unchecked).addStatement("return ($T) $T.this.$N[index]", field.type, columnsName, field.name);
+                } else {
+                    getter.addStatement("return this.$N[index]", field.name);
+                    cursorGetter.addStatement("return $T.this.$N[index]", columnsName, field.name);
+                }
+                accessors.add(getter.build());
+                accessors.add(MethodSpec.methodBuilder(setterName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(TypeName.INT, "index")
+                        .addParameter(field.type, "value")
+                        .addStatement("checkIndex(index)")
+                        .addStatement("this.$N[index] = value", field.name)
+                        .build());
+                accessors.add(MethodSpec.methodBuilder(field.name + "Column")
+                        .addJavadoc("The backing array of $L, valid up to {@link #size()}.\n"
+                                + "It is replaced when the capacity grows.\n", field.name)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(arrayType)
+                        .addStatement("return this.$N", field.name)
+                        .build());
+                cursor.addMethod(cursorGetter.build());
+                cursor.addMethod(MethodSpec.methodBuilder(setterName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(field.type, "value")
+                        .addStatement("checkIndex(index)")
+                        .addStatement("$T.this.$N[index] = value", columnsName, field.name)
+                        .build());
+            }
+            columns.addField(TypeName.INT, "size", Modifier.PRIVATE);
+            columns.addField(TypeName.INT, "capacity", Modifier.PRIVATE);
+            columns.addMethod(MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PUBLIC)
+                    .addStatement("this(16)")
+                    .build());
+            columns.addMethod(MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(TypeName.INT, "initialCapacity")
+                    .addStatement("allocate(initialCapacity)")
+                    .addStatement("this.capacity = initialCapacity")
+                    .build());
+            columns.addMethod(allocate.build());
+            columns.addMethod(MethodSpec.methodBuilder("size")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.INT)
+                    .addStatement("return size")
+                    .build());
+            columns.addMethod(MethodSpec.methodBuilder("capacity")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.INT)
+                    .addStatement("return capacity")
+                    .build());
+            columns.addMethod(MethodSpec.methodBuilder("isEmpty")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return size == 0")
+                    .build());
+            columns.addMethod(grow.addStatement("this.capacity = newCapacity").endControlFlow().build());
+            columns.addMethod(clear.addStatement("size = 0").build());
+            columns.addMethod(appendValues.addStatement("return size++").build());
+            columns.addMethod(appendInstance.addStatement("return size++").build());
+            columns.addMethod(MethodSpec.methodBuilder("appendAll")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(ParameterizedTypeName.get(ClassName.get(Collection.class), WildcardTypeName.subtypeOf(target)), "values")
+                    .addStatement("ensureCapacity(size + values.size())")
+                    .beginControlFlow("for ($T value : values)", target)
+                    .addStatement("append(value)")
+                    .endControlFlow()
+                    .build());
+            columns.addMethods(accessors);
+            columns.addMethod(MethodSpec.methodBuilder("cursor")
+                    .addJavadoc("@return a new cursor before the first record, which next() moves onto\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(cursorName)
+                    .addStatement("return new $T()", cursorName)
+                    .build());
+            columns.addMethod(MethodSpec.methodBuilder("forEach")
+                    .addJavadoc("Scan every record with a single cursor\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(cursorName)), "action")
+                    .addStatement("$T cursor = new $T()", cursorName, cursorName)
+                    .beginControlFlow("for (int i = 0; i < size; i++)")
+                    .addStatement("cursor.index = i")
+                    .addStatement("action.accept(cursor)")
+                    .endControlFlow()
+                    .build());
+            columns.addMethod(MethodSpec.methodBuilder("checkIndex")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(TypeName.INT, "index")
+                    .beginControlFlow("if (index < 0 || index >= size)")
+                    .addStatement("throw new $T(\"Index: \" + index + \", Size: \" + size)", IndexOutOfBoundsException.class)
+                    .endControlFlow()
+                    .build());
+            cursor.addMethod(MethodSpec.methodBuilder("at")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(TypeName.INT, "index")
+                    .returns(cursorName)
+                    .addStatement("checkIndex(index)")
+                    .addStatement("this.index = index")
+                    .addStatement("return this")
+                    .build());
+            cursor.addMethod(MethodSpec.methodBuilder("index")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.INT)
+                    .addStatement("return index")
+                    .build());
+            cursor.addMethod(MethodSpec.methodBuilder("next")
+                    .addJavadoc("Move to the next record\n@return false if there is no next record\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .beginControlFlow("if (index + 1 < size)")
+                    .addStatement("index++")
+                    .addStatement("return true")
+                    .endControlFlow()
+                    .addStatement("return false")
+                    .build());
+            columns.addType(cursor.build());
+            return columns;
+        }
+    }
+
+    private static boolean isReifiable(TypeName type) {
+        if (type instanceof ArrayTypeName) {
+            return isReifiable(((ArrayTypeName) type).componentType);
+        }
+        return type.isPrimitive() || type instanceof ClassName;
+    }
+
+    private static CodeBlock newArray(TypeName component, String length) {
+        StringBuilder dimensions = new StringBuilder();
+        while (component instanceof ArrayTypeName) {
+            component = ((ArrayTypeName) component).componentType;
+            dimensions.append("[]");
+        }
+        return CodeBlock.of("new $T[$L]$L", component, length, dimensions);
+    }
+}
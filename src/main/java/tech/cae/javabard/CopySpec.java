@@ -15,10 +15,47 @@
  */
 package tech.cae.javabard;
 
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import javax.lang.model.element.Modifier;
@@ -29,10 +66,275 @@ import javax.lang.model.element.Modifier;
  */
 public class CopySpec {
     
+    private static final Set<TypeName> IMMUTABLES = new HashSet<>(Arrays.asList(
+            ClassName.get(String.class), ClassName.get(Boolean.class), ClassName.get(Byte.class),
+            ClassName.get(Short.class), ClassName.get(Character.class), ClassName.get(Integer.class),
+            ClassName.get(Long.class), ClassName.get(Float.class), ClassName.get(Double.class),
+            ClassName.get(BigInteger.class), ClassName.get(BigDecimal.class), ClassName.get(UUID.class),
+            ClassName.get(Instant.class), ClassName.get(Duration.class), ClassName.get(LocalDate.class),
+            ClassName.get(LocalDateTime.class), ClassName.get(LocalTime.class), ClassName.get(ZonedDateTime.class)));
+    /**
+     * Declared collection and map types whose contents are copied
+     */
+    private static final Map<ClassName, Class<?>> COPIED_COLLECTIONS = new HashMap<>();
+    /**
+     * Kinds of collection and map that a copy keeps, matched on the exact
+     * runtime class of the source
+     */
+    private static final List<Class<?>> PRESERVED_KINDS = Arrays.asList(
+            HashMap.class, LinkedHashMap.class, TreeMap.class, ConcurrentHashMap.class,
+            ArrayList.class, LinkedList.class, ArrayDeque.class, PriorityQueue.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class);
+    
+    static {
+        for (Class<?> type : new Class<?>[]{Iterable.class, Collection.class, List.class, ArrayList.class, LinkedList.class,
+            Queue.class, Deque.class, ArrayDeque.class, PriorityQueue.class,
+            Set.class, HashSet.class, LinkedHashSet.class, SortedSet.class, NavigableSet.class, TreeSet.class,
+            Map.class, HashMap.class, LinkedHashMap.class, SortedMap.class, NavigableMap.class, TreeMap.class,
+            ConcurrentMap.class, ConcurrentHashMap.class}) {
+            COPIED_COLLECTIONS.put(ClassName.get(type), type);
+        }
+    }
+    
     public static CopySpec.Builder forType(TypeSpec.Builder typeSpecBuilder) {
         return new Builder(typeSpecBuilder);
     }
     
+    /**
+     * Generate a copy constructor and deepCopy() method in a class, rather
+     * than a copy of the class itself
+     *
+     * @param packageName
+     * @param typeSpecBuilder
+     * @return
+     */
+    public static CopySpec.InstanceBuilder forInstances(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new InstanceBuilder(packageName, typeSpecBuilder);
+    }
+    
+    /**
+     * Copies every instance field of another instance in the copy
+     * constructor. Fields of the class itself and of types registered with
+     * withDeepCopiedTypes are copied with their deepCopy() methods; arrays
+     * with Arrays.copyOf; and collections and maps with their elements (or
+     * map values) copied in the same way. A collection or map is copied into
+     * a new one of the same runtime class, presized to the source and with
+     * the same comparator, if that is one of the JDK's ArrayList,
+     * LinkedList, ArrayDeque, PriorityQueue, HashSet, LinkedHashSet, TreeSet,
+     * HashMap, LinkedHashMap, TreeMap or ConcurrentHashMap. Any other list is
+     * copied into an ArrayList, and any other kind (such as an EnumMap or an
+     * unmodifiable view) is shared, as a copy could not keep its behaviour.
+     * Primitives, known immutable types and anything else are shared. The
+     * object graph must not have cycles.
+     *
+     * The copy constructor calls super(other) if the superclass is registered
+     * with withDeepCopiedTypes, so must itself have a copy constructor.
+     * Otherwise it calls the no-argument constructor of the superclass, and
+     * the fields of the superclass are not copied. The class must not already
+     * have a constructor taking one instance of itself.
+     */
+    public static class InstanceBuilder {
+        
+        private final String packageName;
+        private final TypeSpec.Builder typeSpecBuilder;
+        private final TypeSpec typeSpec;
+        private final Set<TypeName> deepCopiedTypes = new HashSet<>();
+        
+        InstanceBuilder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpecBuilder = typeSpecBuilder;
+            this.typeSpec = typeSpecBuilder.build();
+        }
+        
+        /**
+         * Types that have a deepCopy() method, such as those also generated
+         * with CopySpec.forInstances
+         *
+         * @param types
+         * @return
+         */
+        public InstanceBuilder withDeepCopiedTypes(TypeName... types) {
+            this.deepCopiedTypes.addAll(Arrays.asList(types));
+            return this;
+        }
+        
+        public TypeSpec.Builder build() {
+            if (typeSpec.kind != TypeSpec.Kind.CLASS) {
+                throw new IllegalArgumentException("Cannot copy instances of " + typeSpec.kind + " " + typeSpec.name);
+            }
+            ClassName typeName = ClassName.get(packageName, typeSpec.name);
+            TypeName selfType = typeSpec.typeVariables.isEmpty() ? typeName
+                    : ParameterizedTypeName.get(typeName, typeSpec.typeVariables.toArray(new TypeName[0]));
+            deepCopiedTypes.add(typeName);
+            boolean hasConstructor = typeSpec.methodSpecs.stream().anyMatch(MethodSpec::isConstructor);
+            for (MethodSpec method : typeSpec.methodSpecs) {
+                if (method.isConstructor() && method.parameters.size() == 1
+                        && AccessMode.erasure(method.parameters.get(0).type, typeSpec.typeVariables).equals(typeName)) {
+                    throw new IllegalStateException(typeSpec.name + " already has a constructor taking a " + typeSpec.name
+                            + " (" + method.parameters.get(0).name + "), which the copy constructor would clash with");
+                }
+            }
+            boolean isAbstract = typeSpec.modifiers.contains(Modifier.ABSTRACT);
+            MethodSpec.Builder copyConstructor = MethodSpec.constructorBuilder()
+                    .addJavadoc("Deep copy of another instance\n@param other\n")
+                    .addModifiers(isAbstract ? Modifier.PROTECTED : Modifier.PUBLIC)
+                    .addParameter(selfType, "other");
+            if (typeSpec.superclass instanceof ClassName && deepCopiedTypes.contains(typeSpec.superclass)) {
+                copyConstructor.addStatement("super(other)");
+            }
+            for (FieldSpec field : typeSpec.fieldSpecs) {
+                if (!field.hasModifier(Modifier.STATIC) && !EqualsSpec.isHashCodeCache(field) && !SetterSpec.isDirtyTracking(field)
+                        && !(field.hasModifier(Modifier.FINAL) && !field.initializer.isEmpty())) {
+                    copyConstructor.addStatement("this.$N = $L", field.name,
+                            copyOf(field.type, CodeBlock.of("other.$N", field.name), makeHelperName(field.name)));
+                }
+            }
+            if (!hasConstructor) {
+                // Keep the default constructor that the copy constructor would hide
+                typeSpecBuilder.addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .build());
+            }
+            typeSpecBuilder.addMethod(copyConstructor.build());
+            MethodSpec.Builder deepCopy = MethodSpec.methodBuilder("deepCopy")
+                    .addJavadoc("@return a deep copy of this\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(selfType);
+            if (isAbstract) {
+                deepCopy.addModifiers(Modifier.ABSTRACT);
+            } else {
+                deepCopy.addStatement(typeSpec.typeVariables.isEmpty() ? "return new $T(this)" : "return new $T<>(this)", typeName);
+            }
+            typeSpecBuilder.addMethod(deepCopy.build());
+            return typeSpecBuilder;
+        }
+        
+        private String makeHelperName(String fieldName) {
+            return "copy" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        }
+        
+        /**
+         * An expression copying source, adding a helper method where a loop
+         * is needed
+         */
+        private CodeBlock copyOf(TypeName type, CodeBlock source, String helperName) {
+            TypeName rawType = type instanceof ParameterizedTypeName ? ((ParameterizedTypeName) type).rawType : type;
+            if (type.isPrimitive() || IMMUTABLES.contains(type)) {
+                return source;
+            } else if (deepCopiedTypes.contains(rawType)) {
+                return CodeBlock.of("$L == null ? null : $L.deepCopy()", source, source);
+            } else if (type instanceof ArrayTypeName) {
+                TypeName component = ((ArrayTypeName) type).componentType;
+                CodeBlock elementSource = CodeBlock.of("copy[i]");
+                CodeBlock element = copyOf(component, elementSource, helperName + "Element");
+                if (element.equals(elementSource)) {
+                    return CodeBlock.of("$L == null ? null : $T.copyOf($L, $L.length)", source, Arrays.class, source, source);
+                }
+                addHelper(type, helperName, CodeBlock.builder()
+                        .addStatement("$T copy = $T.copyOf(source, source.length)", type, Arrays.class)
+                        .beginControlFlow("for (int i = 0; i < copy.length; i++)")
+                        .addStatement("copy[i] = $L", element)
+                        .endControlFlow()
+                        .addStatement("return copy")
+                        .build());
+                return CodeBlock.of("$N($L)", helperName, source);
+            } else if (type instanceof ParameterizedTypeName && COPIED_COLLECTIONS.containsKey(rawType)) {
+                ParameterizedTypeName parameterized = (ParameterizedTypeName) type;
+                if (parameterized.typeArguments.stream().anyMatch(t -> t instanceof WildcardTypeName)) {
+                    return source;
+                }
+                Class<?> declared = COPIED_COLLECTIONS.get(rawType);
+                boolean isMap = Map.class.isAssignableFrom(declared);
+                TypeName element = parameterized.typeArguments.get(isMap ? 1 : 0);
+                CodeBlock elementSource = CodeBlock.of("element");
+                CodeBlock elementCopy = copyOf(element, elementSource, helperName + "Element");
+                CodeBlock.Builder body = CodeBlock.builder();
+                String from = "source";
+                TypeName copyType = type;
+                if (declared == Iterable.class) {
+                    copyType = ParameterizedTypeName.get(ClassName.get(Collection.class), element);
+                    declared = Collection.class;
+                    from = "collection";
+                    body.beginControlFlow("if (!(source instanceof $T))", Collection.class)
+                            .addStatement("return source")
+                            .endControlFlow()
+                            .addStatement("$T collection = ($T) source", copyType, copyType);
+                }
+                body.addStatement("$T copy", copyType);
+                boolean first = true;
+                for (Class<?> kind : PRESERVED_KINDS) {
+                    if (declared.isAssignableFrom(kind)) {
+                        if (first) {
+                            body.beginControlFlow("if ($N.getClass() == $T.class)", from, kind);
+                            first = false;
+                        } else {
+                            body.nextControlFlow("else if ($N.getClass() == $T.class)", from, kind);
+                        }
+                        body.addStatement("copy = $L", newCollection(kind, parameterized.typeArguments, from));
+                    }
+                }
+                if (declared.isAssignableFrom(ArrayList.class)) {
+                    body.nextControlFlow("else if ($N instanceof $T)", from, List.class)
+                            .addStatement("copy = new $T<>($N.size())", ArrayList.class, from);
+                }
+                body.nextControlFlow("else")
+                        .add("// A copy could not keep the behaviour of any other kind\n")
+                        .addStatement("return source")
+                        .endControlFlow();
+                if (isMap && elementCopy.equals(elementSource)) {
+                    body.addStatement("copy.putAll($N)", from);
+                } else if (isMap) {
+                    body.beginControlFlow("for ($T entry : $N.entrySet())",
+                            ParameterizedTypeName.get(ClassName.get(Map.Entry.class), parameterized.typeArguments.get(0), element), from)
+                            .addStatement("$T element = entry.getValue()", element)
+                            .addStatement("copy.put(entry.getKey(), $L)", elementCopy)
+                            .endControlFlow();
+                } else if (elementCopy.equals(elementSource)) {
+                    body.addStatement("copy.addAll($N)", from);
+                } else {
+                    body.beginControlFlow("for ($T element : $N)", element, from)
+                            .addStatement("copy.add($L)", elementCopy)
+                            .endControlFlow();
+                }
+                addHelper(type, helperName, body.addStatement("return copy").build());
+                return CodeBlock.of("$N($L)", helperName, source);
+            }
+            return source;
+        }
+        
+        /**
+         * A new, empty collection of a kind, sized for and with the comparator
+         * of the source
+         */
+        private CodeBlock newCollection(Class<?> kind, List<TypeName> typeArguments, String from) {
+            if (kind == TreeMap.class || kind == TreeSet.class) {
+                return CodeBlock.of("new $T<>((($T) $N).comparator())", kind,
+                        ParameterizedTypeName.get(ClassName.get(kind), typeArguments.toArray(new TypeName[0])), from);
+            } else if (kind == PriorityQueue.class) {
+                return CodeBlock.of("new $T<>($T.max(1, $N.size()), (($T) $N).comparator())", kind, Math.class, from,
+                        ParameterizedTypeName.get(ClassName.get(kind), typeArguments.toArray(new TypeName[0])), from);
+            } else if (kind == LinkedList.class) {
+                return CodeBlock.of("new $T<>()", kind);
+            } else if (kind == ArrayList.class || kind == ArrayDeque.class) {
+                return CodeBlock.of("new $T<>($N.size())", kind, from);
+            }
+            return CodeBlock.of("new $T<>((int) ($N.size() / 0.75f) + 1)", kind, from);
+        }
+        
+        private void addHelper(TypeName type, String helperName, CodeBlock body) {
+            typeSpecBuilder.addMethod(MethodSpec.methodBuilder(helperName)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addTypeVariables(typeSpec.typeVariables)
+                    .addParameter(type, "source")
+                    .returns(type)
+                    .beginControlFlow("if (source == null)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addCode(body)
+                    .build());
+        }
+    }
+    
     public static class Builder {
 
         private final TypeSpec.Builder typeSpecBuilder;
@@ -15,12 +15,19 @@
  */
 package tech.cae.javabard;
 
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeSpec.Kind;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import javax.lang.model.element.Modifier;
@@ -32,29 +39,207 @@ import javax.lang.model.element.Modifier;
 public class EqualsSpec {
 
     public static EqualsSpec.Builder forType(TypeSpec.Builder typeSpecBuilder) {
-        return new Builder(typeSpecBuilder);
+        return new Builder(null, typeSpecBuilder);
     }
 
+    /**
+     * As forType(TypeSpec.Builder), but with the package of the type, so that
+     * field types are recognised as its nested enums by their full name
+     *
+     * @param packageName
+     * @param typeSpecBuilder
+     * @return
+     */
+    public static EqualsSpec.Builder forType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(packageName, typeSpecBuilder);
+    }
+
+    /**
+     * How the hash code of a class whose instance fields are all final is
+     * cached
+     */
+    public enum HashCodeCaching {
+        /**
+         * Compute the hash code on every call
+         */
+        NONE,
+        /**
+         * Compute the hash code on first use and keep it in a private
+         * transient field
+         */
+        LAZY,
+        /**
+         * Compute the hash code at the end of every constructor, so apply
+         * after the constructors have been added (e.g. after BuilderSpec).
+         * The field is transient, so an instance made without a constructor
+         * (such as by deserialization) computes it on first use.
+         */
+        EAGER
+    }
+
+    static final String CACHED_HASH_CODE = "cachedHashCode";
+    private static final ClassName STRING = ClassName.get(String.class);
+
     public static class Builder {
 
+        private final String packageName;
         private final TypeSpec.Builder typeSpecBuilder;
         private final TypeSpec typeSpec;
+        private HashCodeCaching hashCodeCaching = HashCodeCaching.NONE;
+        private boolean costOrdered = false;
+        private boolean arrayContents = false;
+        private final Map<String, Integer> fieldPriorities = new HashMap<>();
 
-        Builder(TypeSpec.Builder typeSpecBuilder) {
+        Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
             this.typeSpecBuilder = typeSpecBuilder;
             this.typeSpec = this.typeSpecBuilder.build();
         }
 
+        /**
+         * Cache the hash code. Only applied to classes whose instance fields
+         * are all final, other classes compute it on every call.
+         *
+         * @param caching
+         * @return
+         */
+        public Builder withHashCodeCaching(HashCodeCaching caching) {
+            this.hashCodeCaching = caching;
+            return this;
+        }
+
+        /**
+         * Compare the cheapest fields first in equals(): primitives, then
+         * enums nested in the type and boxed primitives, then Strings, then
+         * everything else. Fields of the same cost keep their declaration
+         * order.
+         *
+         * @return
+         */
+        public Builder withCostOrderedComparison() {
+            this.costOrdered = true;
+            return this;
+        }
+
+        /**
+         * Set the position of a field in equals(), in place of its estimated
+         * cost (0 for primitives, 1 for enums and boxed primitives, 2 for
+         * Strings and 3 for everything else). Implies cost ordering.
+         *
+         * @param fieldName
+         * @param priority lower values are compared first
+         * @return
+         */
+        public Builder withFieldPriority(String fieldName, int priority) {
+            this.costOrdered = true;
+            this.fieldPriorities.put(fieldName, priority);
+            return this;
+        }
+
+        /**
+         * Compare and hash array fields by their contents, with Arrays.equals
+         * and Arrays.hashCode (deepEquals and deepHashCode for arrays of
+         * references), rather than by identity
+         *
+         * @return
+         */
+        public Builder withArrayContentEquality() {
+            this.arrayContents = true;
+            return this;
+        }
+
+        private boolean isContentArray(TypeName type) {
+            return arrayContents && type instanceof ArrayTypeName;
+        }
+
+        private String arraysMethod(TypeName type, String method) {
+            return ((ArrayTypeName) type).componentType.isPrimitive() ? method : "deep" + Character.toUpperCase(method.charAt(0)) + method.substring(1);
+        }
+
+        List<FieldSpec> comparisonOrder(List<FieldSpec> fields) {
+            if (!costOrdered) {
+                return fields;
+            }
+            List<FieldSpec> ordered = new ArrayList<>(fields);
+            ordered.sort(Comparator.comparingInt(field -> fieldPriorities.getOrDefault(field.name, comparisonCost(field.type))));
+            return ordered;
+        }
+
+        private int comparisonCost(TypeName type) {
+            if (type.isPrimitive()) {
+                return 0;
+            }
+            if (type.isBoxedPrimitive() || isNestedEnum(type)) {
+                return 1;
+            }
+            if (STRING.equals(type)) {
+                return 2;
+            }
+            return 3;
+        }
+
+        /**
+         * Whether a type is an enum nested in this type: its full name, or a
+         * bare simple name that resolves to it. Without the package name, any
+         * type of the same simple name enclosing it is accepted.
+         */
+        private boolean isNestedEnum(TypeName type) {
+            if (!(type instanceof ClassName)) {
+                return false;
+            }
+            ClassName className = (ClassName) type;
+            ClassName enclosing = className.enclosingClassName();
+            if (enclosing == null) {
+                if (!className.packageName().isEmpty()) {
+                    return false;
+                }
+            } else if (packageName != null) {
+                if (!enclosing.equals(ClassName.get(packageName, typeSpec.name))) {
+                    return false;
+                }
+            } else if (!enclosing.simpleName().equals(typeSpec.name)) {
+                return false;
+            }
+            return typeSpec.typeSpecs.stream()
+                    .anyMatch(nested -> nested.kind == Kind.ENUM && nested.name.equals(className.simpleName()));
+        }
+
         MethodSpec makeHashCode(List<FieldSpec> fields, TypeName superclass) {
+            return addHashCodeStatements(MethodSpec.methodBuilder("hashCode")
+                    .returns(TypeName.INT)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class), fields, superclass).build();
+        }
+
+        MethodSpec makeComputeHashCode(List<FieldSpec> fields, TypeName superclass) {
+            return addHashCodeStatements(MethodSpec.methodBuilder("computeHashCode")
+                    .returns(TypeName.INT)
+                    .addModifiers(Modifier.PRIVATE), fields, superclass).build();
+        }
+
+        MethodSpec makeCachedHashCode() {
             MethodSpec.Builder msb = MethodSpec.methodBuilder("hashCode")
                     .returns(TypeName.INT)
                     .addModifiers(Modifier.PUBLIC)
                     .addAnnotation(Override.class);
-            int first = randomPrime();
-            int mult = randomPrime();
+            // Racy single-check: the worst case is computing the hash more than once
+            msb.addStatement("int hash = this.$N", CACHED_HASH_CODE);
+            msb.beginControlFlow("if (hash == 0)")
+                    .addStatement("hash = computeHashCode()")
+                    .addStatement("this.$N = hash", CACHED_HASH_CODE)
+                    .endControlFlow();
+            msb.addStatement("return hash");
+            return msb.build();
+        }
+
+        private MethodSpec.Builder addHashCodeStatements(MethodSpec.Builder msb, List<FieldSpec> fields, TypeName superclass) {
+            // Seeded from the type name so that the output is reproducible
+            Random rand = new Random(typeSpec.name.hashCode());
+            int first = randomPrime(rand);
+            int mult = randomPrime(rand);
             msb.addStatement("int hash = $L", first);
             for (FieldSpec field : fields) {
-                if (!field.hasModifier(Modifier.STATIC)) {
+                if (!field.hasModifier(Modifier.STATIC) && !isHashCodeCache(field) && !SetterSpec.isDirtyTracking(field)) {
                     if (TypeName.BOOLEAN.equals(field.type)) {
                         msb.addStatement("hash = $L * hash + (this.$N ? 1 : 0)", mult, field);
                     } else if (TypeName.DOUBLE.equals(field.type)) {
@@ -65,6 +250,8 @@ public class EqualsSpec {
                         msb.addStatement("hash = $L * hash + $T.floatToIntBits(this.$N)", mult, Float.class, field);
                     } else if (field.type.isPrimitive()) {
                         msb.addStatement("hash = $L * hash + this.$N", mult, field);
+                    } else if (isContentArray(field.type)) {
+                        msb.addStatement("hash = $L * hash + $T.$L(this.$N)", mult, Arrays.class, arraysMethod(field.type, "hashCode"), field);
                     } else {
                         msb.addStatement("hash = $L * hash + $T.hashCode(this.$N)", mult, Objects.class, field);
                     }
@@ -74,10 +261,14 @@ public class EqualsSpec {
                 msb.addStatement("hash = $L * hash + super.hashCode()", mult);
             }
             msb.addStatement("return hash");
-            return msb.build();
+            return msb;
         }
 
         MethodSpec makeEquals(List<FieldSpec> fields, TypeName superclass) {
+            return makeEquals(fields, superclass, HashCodeCaching.NONE);
+        }
+
+        MethodSpec makeEquals(List<FieldSpec> fields, TypeName superclass, HashCodeCaching caching) {
             MethodSpec.Builder msb = MethodSpec.methodBuilder("equals")
                     .returns(TypeName.BOOLEAN)
                     .addParameter(TypeName.OBJECT, "obj")
@@ -87,14 +278,21 @@ public class EqualsSpec {
             msb.beginControlFlow("if (obj == null)").addStatement("return false").endControlFlow();
             msb.beginControlFlow("if (obj instanceof $N)", typeSpec);
             msb.addStatement("final $N other = ($N)obj", typeSpec, typeSpec);
-            for (FieldSpec field : fields) {
-                if (!field.hasModifier(Modifier.STATIC)) {
+            if (caching != HashCodeCaching.NONE) {
+                msb.beginControlFlow("if (this.$N != 0 && other.$N != 0 && this.$N != other.$N)",
+                        CACHED_HASH_CODE, CACHED_HASH_CODE, CACHED_HASH_CODE, CACHED_HASH_CODE)
+                        .addStatement("return false").endControlFlow();
+            }
+            for (FieldSpec field : comparisonOrder(fields)) {
+                if (!field.hasModifier(Modifier.STATIC) && !isHashCodeCache(field) && !SetterSpec.isDirtyTracking(field)) {
                     if (TypeName.DOUBLE.equals(field.type)) {
                         msb.beginControlFlow("if ($T.doubleToLongBits(this.$N) != $T.doubleToLongBits(other.$N))", Double.class, field, Double.class, field).addStatement("return false").endControlFlow();
                     } else if (TypeName.FLOAT.equals(field.type)) {
                         msb.beginControlFlow("if ($T.floatToIntBits(this.$N) != $T.floatToIntBits(other.$N))", Float.class, field, Float.class, field).addStatement("return false").endControlFlow();
-                    } else if (field.type.isPrimitive()) {
+                    } else if (field.type.isPrimitive() || isNestedEnum(field.type)) {
                         msb.beginControlFlow("if (this.$N != other.$N)", field, field).addStatement("return false").endControlFlow();
+                    } else if (isContentArray(field.type)) {
+                        msb.beginControlFlow("if (!$T.$L(this.$N, other.$N))", Arrays.class, arraysMethod(field.type, "equals"), field, field).addStatement("return false").endControlFlow();
                     } else {
                         msb.beginControlFlow("if (!$T.equals(this.$N, other.$N))", Objects.class, field, field).addStatement("return false").endControlFlow();
                     }
@@ -112,17 +310,62 @@ public class EqualsSpec {
 
         public TypeSpec.Builder build() {
             if (this.typeSpec.kind == Kind.CLASS) {
+                HashCodeCaching caching = isImmutable(this.typeSpec.fieldSpecs) ? hashCodeCaching : HashCodeCaching.NONE;
+                if (caching == HashCodeCaching.NONE) {
+                    this.typeSpecBuilder.addMethod(makeHashCode(this.typeSpec.fieldSpecs, this.typeSpec.superclass));
+                } else {
+                    addHashCodeCache(caching);
+                }
                 return this.typeSpecBuilder
-                        .addMethod(makeHashCode(this.typeSpec.fieldSpecs, this.typeSpec.superclass))
-                        .addMethod(makeEquals(this.typeSpec.fieldSpecs, this.typeSpec.superclass));
+                        .addMethod(makeEquals(this.typeSpec.fieldSpecs, this.typeSpec.superclass, caching));
             } else {
                 return this.typeSpecBuilder;
             }
         }
+
+        private void addHashCodeCache(HashCodeCaching caching) {
+            if (caching == HashCodeCaching.EAGER) {
+                boolean hasConstructor = false;
+                for (int i = 0; i < this.typeSpecBuilder.methodSpecs.size(); i++) {
+                    MethodSpec method = this.typeSpecBuilder.methodSpecs.get(i);
+                    // Constructors delegating to this(...) have the field assigned for them
+                    if (method.isConstructor() && !method.code.toString().trim().startsWith("this(")) {
+                        this.typeSpecBuilder.methodSpecs.set(i, method.toBuilder()
+                                .addStatement("this.$N = computeHashCode()", CACHED_HASH_CODE)
+                                .build());
+                        hasConstructor = true;
+                    }
+                }
+                if (!hasConstructor) {
+                    throw new IllegalStateException("Eager hash code caching requires " + this.typeSpec.name + " to have constructors");
+                }
+            }
+            this.typeSpecBuilder
+                    .addField(TypeName.INT, CACHED_HASH_CODE, Modifier.PRIVATE, Modifier.TRANSIENT)
+                    .addMethod(makeComputeHashCode(this.typeSpec.fieldSpecs, this.typeSpec.superclass))
+                    .addMethod(makeCachedHashCode());
+        }
+
+        private boolean isImmutable(List<FieldSpec> fields) {
+            return fields.stream()
+                    .filter(field -> !field.hasModifier(Modifier.STATIC) && !isHashCodeCache(field) && !SetterSpec.isDirtyTracking(field))
+                    .allMatch(field -> field.hasModifier(Modifier.FINAL));
+        }
+    }
+
+    /**
+     * Whether a field is the hash code cache added by EqualsSpec, which other
+     * specs must not treat as part of the state of the class
+     *
+     * @param field
+     * @return
+     */
+    static boolean isHashCodeCache(FieldSpec field) {
+        return CACHED_HASH_CODE.equals(field.name) && TypeName.INT.equals(field.type)
+                && field.hasModifier(Modifier.TRANSIENT) && !field.hasModifier(Modifier.STATIC);
     }
 
-    private static int randomPrime() {
-        Random rand = new Random(); // generate a random number
+    private static int randomPrime(Random rand) {
         int num = rand.nextInt(23) + 1;
         while (!isPrime(num)) {
             num = rand.nextInt(23) + 1;
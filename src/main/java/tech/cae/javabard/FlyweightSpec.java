@@ -0,0 +1,204 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate a flyweight that reads and writes the primitive fields of a class
+ * directly in a ByteBuffer (which may be a MappedByteBuffer), at a fixed
+ * binary layout.
+ *
+ * The flyweight uses absolute gets and puts, so it never changes the position
+ * of the buffer, and uses the byte order of the buffer. A nested Layout class
+ * holds the record size and the offset of each field.
+ *
+ * @author peter
+ */
+public class FlyweightSpec {
+
+    public static FlyweightSpec.Builder forType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(packageName, typeSpecBuilder);
+    }
+
+    public static class Builder {
+
+        private final String packageName;
+        private final TypeSpec typeSpec;
+        private String namingConvention = "$NFlyweight";
+        private String getterNamingConvention = "get$N";
+        private String setterNamingConvention = "set$N";
+        private boolean naturalAlignment = false;
+
+        Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
+        }
+
+        public Builder withNamingConvention(String n) {
+            this.namingConvention = n;
+            return this;
+        }
+
+        public Builder withGetterNamingConvention(String n) {
+            this.getterNamingConvention = n;
+            return this;
+        }
+
+        public Builder withSetterNamingConvention(String n) {
+            this.setterNamingConvention = n;
+            return this;
+        }
+
+        /**
+         * Order the fields by decreasing size, and pad the record, so that
+         * every field is aligned to its size. By default fields are packed in
+         * declaration order.
+         *
+         * @return
+         */
+        public Builder withNaturalAlignment() {
+            this.naturalAlignment = true;
+            return this;
+        }
+
+        public ClassName getFlyweightClassName() {
+            return ClassName.get(packageName, namingConvention.replace("$N", typeSpec.name));
+        }
+
+        public TypeSpec.Builder build() {
+            ClassName flyweightName = getFlyweightClassName();
+            ClassName layoutName = flyweightName.nestedClass("Layout");
+            List<FieldSpec> fields = new ArrayList<>();
+            for (FieldSpec field : typeSpec.fieldSpecs) {
+                if (!field.hasModifier(Modifier.STATIC)) {
+                    if (!field.type.isPrimitive()) {
+                        throw new IllegalArgumentException("Field " + field.name + " of " + typeSpec.name + " is not primitive");
+                    }
+                    fields.add(field);
+                }
+            }
+            if (fields.isEmpty()) {
+                throw new IllegalArgumentException(typeSpec.name + " has no instance fields to lay out");
+            }
+            if (naturalAlignment) {
+                fields.sort(Comparator.comparingInt((FieldSpec field) -> sizeOf(field.type)).reversed());
+            }
+            TypeSpec.Builder layout = TypeSpec.classBuilder(layoutName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .addJavadoc("Binary layout of a $L record\n", typeSpec.name)
+                    .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+            TypeSpec.Builder flyweight = TypeSpec.classBuilder(flyweightName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addJavadoc("Flyweight over $L records in a ByteBuffer\n", typeSpec.name)
+                    .addField(ByteBuffer.class, "buffer", Modifier.PRIVATE)
+                    .addField(TypeName.INT, "offset", Modifier.PRIVATE);
+            int offset = 0;
+            int alignment = 1;
+            for (FieldSpec field : fields) {
+                String constant = Names.constantName(field.name) + "_OFFSET";
+                layout.addField(FieldSpec.builder(TypeName.INT, constant, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", offset)
+                        .build());
+                String getterName = Names.accessorName(getterNamingConvention, field.name);
+                String setterName = Names.accessorName(setterNamingConvention, field.name);
+                MethodSpec.Builder getter = MethodSpec.methodBuilder(getterName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(field.type);
+                MethodSpec.Builder setter = MethodSpec.methodBuilder(setterName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(field.type, "value")
+                        .returns(flyweightName);
+                if (TypeName.BOOLEAN.equals(field.type)) {
+                    getter.addStatement("return buffer.get(offset + $T.$N) != 0", layoutName, constant);
+                    setter.addStatement("buffer.put(offset + $T.$N, (byte) (value ? 1 : 0))", layoutName, constant);
+                } else {
+                    String accessor = TypeName.BYTE.equals(field.type) ? "" : Names.prefix(field.type);
+                    getter.addStatement("return buffer.get$L(offset + $T.$N)", accessor, layoutName, constant);
+                    setter.addStatement("buffer.put$L(offset + $T.$N, value)", accessor, layoutName, constant);
+                }
+                flyweight.addMethod(getter.build());
+                flyweight.addMethod(setter.addStatement("return this").build());
+                offset += sizeOf(field.type);
+                alignment = Math.max(alignment, sizeOf(field.type));
+            }
+            if (naturalAlignment) {
+                offset = (offset + alignment - 1) / alignment * alignment;
+            }
+            layout.addField(FieldSpec.builder(TypeName.INT, "SIZE", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .addJavadoc("Size of a record in bytes\n")
+                    .initializer("$L", offset)
+                    .build());
+            flyweight.addType(layout.build());
+            flyweight.addMethod(MethodSpec.methodBuilder("wrap")
+                    .addJavadoc("Point at the record starting at a byte offset in a buffer\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addParameter(TypeName.INT, "offset")
+                    .returns(flyweightName)
+                    .addStatement("this.buffer = buffer")
+                    .addStatement("this.offset = offset")
+                    .addStatement("return this")
+                    .build());
+            flyweight.addMethod(MethodSpec.methodBuilder("wrapRecord")
+                    .addJavadoc("Point at the record with the given index in a buffer of consecutive records\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addParameter(TypeName.INT, "index")
+                    .returns(flyweightName)
+                    .addStatement("return wrap(buffer, index * $T.SIZE)", layoutName)
+                    .build());
+            flyweight.addMethod(MethodSpec.methodBuilder("buffer")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(ByteBuffer.class)
+                    .addStatement("return buffer")
+                    .build());
+            flyweight.addMethod(MethodSpec.methodBuilder("offset")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.INT)
+                    .addStatement("return offset")
+                    .build());
+            flyweight.addMethod(MethodSpec.methodBuilder("count")
+                    .addJavadoc("@return the number of whole records up to the limit of a buffer\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .returns(TypeName.INT)
+                    .addStatement("return buffer.limit() / $T.SIZE", layoutName)
+                    .build());
+            return flyweight;
+        }
+    }
+
+    static int sizeOf(TypeName type) {
+        if (TypeName.LONG.equals(type) || TypeName.DOUBLE.equals(type)) {
+            return 8;
+        } else if (TypeName.INT.equals(type) || TypeName.FLOAT.equals(type)) {
+            return 4;
+        } else if (TypeName.SHORT.equals(type) || TypeName.CHAR.equals(type)) {
+            return 2;
+        }
+        return 1;
+    }
+}
@@ -16,9 +16,14 @@
 package tech.cae.javabard;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.lang.model.element.Modifier;
 
 /**
@@ -27,6 +32,23 @@ import javax.lang.model.element.Modifier;
  */
 public class GetterSpec {
 
+    /**
+     * How a lazy getter caches the value it computes
+     */
+    public enum Memoization {
+        /**
+         * No locking, so racing threads may each compute the value. The
+         * initializer must be idempotent, and a reference value must be safe
+         * to publish without synchronization.
+         */
+        SINGLE_CHECK,
+        /**
+         * Compute the value once, locking on the instance until it is set,
+         * with the field made volatile
+         */
+        DOUBLE_CHECKED
+    }
+
     /**
      *
      * @param field
@@ -43,7 +65,7 @@ public class GetterSpec {
      * @return
      */
     public static MethodSpec.Builder forField(FieldSpec field, String namingConvention) {
-        MethodSpec.Builder builder = MethodSpec.methodBuilder(makeName(namingConvention, field.name))
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(Names.accessorName(namingConvention, field.name))
                 .addJavadoc("Get " + field.javadoc + "\n@return " + field.javadoc + "\n")
                 .addAnnotation(JsonIgnore.class)
                 .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
@@ -55,15 +77,81 @@ public class GetterSpec {
         return builder;
     }
 
-    private static String makeName(String namingConvention, String name) {
-        if (namingConvention.indexOf("$N") > 0) {
-            return namingConvention.replace("$N", toCamelCase(name));
+    /**
+     * A getter that computes the value of the field on first access, caching
+     * it in the field. A primitive field is cached with a boolean field
+     * named ...Computed, which must be added to the class; GetterSpec.Builder
+     * does so.
+     *
+     * @param field
+     * @param namingConvention
+     * @param initializer expression computing the value; null is recomputed
+     * @param memoization
+     * @return
+     */
+    public static MethodSpec.Builder lazyForField(FieldSpec field, String namingConvention, CodeBlock initializer, Memoization memoization) {
+        boolean locking = memoization == Memoization.DOUBLE_CHECKED;
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(Names.accessorName(namingConvention, field.name))
+                .addJavadoc("Get " + field.javadoc + ", computed on first access\n@return " + field.javadoc + "\n")
+                .addAnnotation(JsonIgnore.class)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .returns(field.type);
+        if (field.type.isPrimitive()) {
+            String flag = computedFlagName(field.name);
+            builder.beginControlFlow("if (!this.$N)", flag);
+            if (locking) {
+                builder.beginControlFlow("synchronized (this)")
+                        .beginControlFlow("if (!this.$N)", flag);
+            }
+            builder.addStatement("this.$N = $L", field.name, initializer)
+                    .addStatement("this.$N = true", flag);
+            if (locking) {
+                builder.endControlFlow()
+                        .endControlFlow();
+            }
+            return builder.endControlFlow()
+                    .addStatement("return this.$N", field.name);
+        }
+        builder.addStatement("$T value = this.$N", field.type, field.name)
+                .beginControlFlow("if (value == null)");
+        if (locking) {
+            builder.beginControlFlow("synchronized (this)")
+                    .addStatement("value = this.$N", field.name)
+                    .beginControlFlow("if (value == null)");
+        }
+        builder.addStatement("value = $L", initializer)
+                .addStatement("this.$N = value", field.name);
+        if (locking) {
+            builder.endControlFlow()
+                    .endControlFlow();
+        }
+        return builder.endControlFlow()
+                .addStatement("return value");
+    }
+
+    /**
+     * A method that discards the cached value of a lazy field, so that it is
+     * computed again on the next access
+     *
+     * @param field
+     * @return
+     */
+    public static MethodSpec.Builder invalidatorForField(FieldSpec field) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(invalidatorName(field.name))
+                .addJavadoc("Discard the cached " + field.javadoc + "\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+        if (field.type.isPrimitive()) {
+            return builder.addStatement("this.$N = false", computedFlagName(field.name));
         }
-        return namingConvention.replace("$N", name);
+        return builder.addStatement("this.$N = null", field.name);
     }
 
-    private static String toCamelCase(String a) {
-        return new String(new char[]{Character.toUpperCase(a.charAt(0))}) + a.substring(1);
+    static String invalidatorName(String name) {
+        return Names.accessorName("invalidate$N", name);
+    }
+
+    static String computedFlagName(String name) {
+        return name + "Computed";
     }
 
     /**
@@ -83,10 +171,15 @@ public class GetterSpec {
         private final TypeSpec.Builder typeSpecBuilder;
         private final TypeSpec typeSpec;
         private String namingConvention = "get$N";
+        private final Map<String, CodeBlock> lazyInitializers = new LinkedHashMap<>();
+        private final Map<String, Memoization> lazyMemoizations = new LinkedHashMap<>();
+        private boolean invalidationHooks = false;
+        private AccessMode accessMode = AccessMode.PLAIN;
+        private final Map<String, AccessMode> fieldAccessModes = new HashMap<>();
 
         Builder(TypeSpec.Builder typeSpecBuilder) {
             this.typeSpecBuilder = typeSpecBuilder;
-            this.typeSpec = typeSpecBuilder.build();
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
         }
 
         public Builder withNamingConvention(String n) {
@@ -94,10 +187,94 @@ public class GetterSpec {
             return this;
         }
 
+        /**
+         * Compute the value of a field on first access, rather than in a
+         * constructor. The field is made non-final, and volatile if
+         * DOUBLE_CHECKED.
+         *
+         * @param fieldName
+         * @param initializer expression computing the value
+         * @param memoization
+         * @return
+         */
+        public Builder withLazyField(String fieldName, CodeBlock initializer, Memoization memoization) {
+            this.lazyInitializers.put(fieldName, initializer);
+            this.lazyMemoizations.put(fieldName, memoization);
+            return this;
+        }
+
+        /**
+         * Generate an invalidateX() method for each lazy field, which
+         * SetterSpec.Builder.withInvalidation can call from setters
+         *
+         * @return
+         */
+        public Builder withInvalidationHooks() {
+            this.invalidationHooks = true;
+            return this;
+        }
+
+        /**
+         * The access mode of every non-final instance field. Getters of any
+         * mode other than PLAIN read the field made volatile; the atomic
+         * methods are generated by SetterSpec.Builder.withAccessMode.
+         *
+         * @param accessMode
+         * @return
+         */
+        public Builder withAccessMode(AccessMode accessMode) {
+            this.accessMode = accessMode;
+            return this;
+        }
+
+        /**
+         * The access mode of one non-final field
+         *
+         * @param fieldName
+         * @param accessMode
+         * @return
+         */
+        public Builder withAccessMode(String fieldName, AccessMode accessMode) {
+            this.fieldAccessModes.put(fieldName, accessMode);
+            return this;
+        }
+
         public TypeSpec.Builder build() {
             typeSpec.fieldSpecs.forEach((field) -> {
-                typeSpecBuilder.addMethod(forField(field, namingConvention).build());
+                AccessMode mode = fieldAccessModes.getOrDefault(field.name,
+                        field.hasModifier(Modifier.FINAL) || field.hasModifier(Modifier.STATIC) ? AccessMode.PLAIN : accessMode);
+                if (mode.isVolatile() && !lazyInitializers.containsKey(field.name)) {
+                    AccessMode.makeVolatile(typeSpecBuilder, field.name);
+                }
+                if (lazyInitializers.containsKey(field.name)) {
+                    if (field.hasModifier(Modifier.STATIC)) {
+                        throw new IllegalArgumentException("Static field " + field.name + " cannot be lazy");
+                    }
+                    typeSpecBuilder.addMethod(lazyForField(field, namingConvention,
+                            lazyInitializers.get(field.name), lazyMemoizations.get(field.name)).build());
+                    if (invalidationHooks) {
+                        typeSpecBuilder.addMethod(invalidatorForField(field).build());
+                    }
+                } else {
+                    typeSpecBuilder.addMethod(forField(field, namingConvention).build());
+                }
             });
+            for (int i = 0; i < typeSpecBuilder.fieldSpecs.size(); i++) {
+                FieldSpec field = typeSpecBuilder.fieldSpecs.get(i);
+                if (lazyInitializers.containsKey(field.name)) {
+                    boolean locking = lazyMemoizations.get(field.name) == Memoization.DOUBLE_CHECKED;
+                    FieldSpec.Builder lazyField = field.toBuilder();
+                    lazyField.modifiers.remove(Modifier.FINAL);
+                    if (locking && !field.type.isPrimitive() && !lazyField.modifiers.contains(Modifier.VOLATILE)) {
+                        lazyField.addModifiers(Modifier.VOLATILE);
+                    }
+                    typeSpecBuilder.fieldSpecs.set(i, lazyField.build());
+                    if (field.type.isPrimitive()) {
+                        typeSpecBuilder.fieldSpecs.add(++i, FieldSpec.builder(TypeName.BOOLEAN,
+                                computedFlagName(field.name), Modifier.PRIVATE, Modifier.VOLATILE).build());
+                    }
+                }
+            }
             return typeSpecBuilder;
         }
     }
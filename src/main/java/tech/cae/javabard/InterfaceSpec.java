@@ -16,11 +16,34 @@
 package tech.cae.javabard;
 
 import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import javax.lang.model.element.Modifier;
 
 /**
@@ -29,6 +52,9 @@ import javax.lang.model.element.Modifier;
  */
 public class InterfaceSpec {
     
+    static final int HISTOGRAM_BUCKETS = 64;
+    static final int CACHE_SEGMENTS = 16;
+    
     public static InterfaceSpec.Builder forType(String interfacePackageName, TypeSpec.Builder typeSpecBuilder) {
         return new Builder(interfacePackageName, typeSpecBuilder);
     }
@@ -40,11 +66,16 @@ public class InterfaceSpec {
         private final TypeSpec typeSpec;
         private String interfaceNamingConvention = "$N";
         private String implementingTypeNamingConvention = "$N";
+        private String decoratorNamingConvention = null;
+        private String asyncNamingConvention = null;
+        private final Map<String, long[]> batchedMethods = new LinkedHashMap<>();
+        private String cachingNamingConvention = null;
+        private final Map<String, long[]> cachedMethods = new LinkedHashMap<>();
         
         Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
             this.packageName = packageName;
             this.typeSpecBuilder = typeSpecBuilder;
-            this.typeSpec = typeSpecBuilder.build();
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
         }
         
         public Builder withInterfaceNamingConvention(String name) {
@@ -57,6 +88,87 @@ public class InterfaceSpec {
             return this;
         }
         
+        /**
+         * Also generate a decorator of the interface, which delegates every
+         * call and records the number of calls, the number that threw and a
+         * histogram of their durations for each method
+         *
+         * @param name naming convention of the decorator, such as
+         * "Instrumented$N"
+         * @return
+         */
+        public Builder withInstrumentedDecorator(String name) {
+            this.decoratorNamingConvention = name;
+            return this;
+        }
+        
+        /**
+         * Also generate an asynchronous facade of the interface, with a method
+         * returning a CompletableFuture for each method. The facade runs calls
+         * on a given Executor, the common ForkJoinPool by default; any
+         * Executor may be used, such as virtual threads on newer JDKs.
+         *
+         * @param name naming convention of the facade, such as "$NAsync"
+         * @return
+         */
+        public Builder withAsyncFacade(String name) {
+            this.asyncNamingConvention = name;
+            return this;
+        }
+        
+        /**
+         * Batch the calls of a method with one parameter in the asynchronous
+         * facade, dispatching them to a bulk implementation when maxBatchSize
+         * calls are waiting or windowMillis after the first of them
+         *
+         * @param methodName
+         * @param maxBatchSize
+         * @param windowMillis
+         * @return
+         */
+        public Builder withBatching(String methodName, int maxBatchSize, long windowMillis) {
+            if (maxBatchSize <= 0 || windowMillis < 0) {
+                throw new IllegalArgumentException("Invalid batching of " + methodName);
+            }
+            this.batchedMethods.put(methodName, new long[]{maxBatchSize, windowMillis});
+            return this;
+        }
+        
+        /**
+         * Also generate a decorator of the interface, which caches the results
+         * of the methods given to withCachedMethod
+         *
+         * @param name naming convention of the decorator, such as "Caching$N"
+         * @return
+         */
+        public Builder withCachingDecorator(String name) {
+            this.cachingNamingConvention = name;
+            return this;
+        }
+        
+        /**
+         * Cache the results of a method, and every overload of it, in the
+         * caching decorator, keyed on its parameters. A single parameter that
+         * is not an array is the key itself; otherwise the parameters are
+         * combined in a generated key class with equals and hashCode from
+         * EqualsSpec, which copies arrays and compares them by content. Each
+         * cache is split into segments, each evicting its least recently used
+         * entries, so the eviction order is approximately LRU.
+         *
+         * @param methodName
+         * @param maxSize
+         * @param ttlMillis time to live of an entry, or 0 to keep entries
+         * until they are evicted
+         * @return
+         */
+        public Builder withCachedMethod(String methodName, int maxSize, long ttlMillis) {
+            if (maxSize <= 0 || ttlMillis < 0) {
+                throw new IllegalArgumentException("Invalid caching of " + methodName);
+            }
+            this.cachedMethods.put(methodName, new long[]{maxSize, ttlMillis});
+            return this;
+        }
+        
         public ClassName getInterfaceName() {
             return ClassName.get(packageName, makeName(interfaceNamingConvention));
         }
@@ -88,7 +200,638 @@ public class InterfaceSpec {
                     : m)
                     .build()
                     .addSuperinterface(getInterfaceName());
-            return new InterfaceAndImplementingType(interfaceBuilder, implementingClassBuilder);
+            TypeSpec.Builder decoratorBuilder = decoratorNamingConvention == null ? null
+                    : makeDecorator(ClassName.get(packageName, makeName(decoratorNamingConvention)), interfaceBuilder.methodSpecs);
+            TypeSpec.Builder asyncFacadeBuilder = asyncNamingConvention == null ? null
+                    : makeAsyncFacade(ClassName.get(packageName, makeName(asyncNamingConvention)), interfaceBuilder.methodSpecs);
+            TypeSpec.Builder cachingDecoratorBuilder = cachingNamingConvention == null ? null
+                    : makeCachingDecorator(ClassName.get(packageName, makeName(cachingNamingConvention)), interfaceBuilder.methodSpecs);
+            return new InterfaceAndImplementingType(interfaceBuilder, implementingClassBuilder, decoratorBuilder, asyncFacadeBuilder,
+                    cachingDecoratorBuilder);
+        }
+        
+        private TypeSpec.Builder makeCachingDecorator(ClassName decoratorName, List<MethodSpec> methods) {
+            ClassName cache = decoratorName.nestedClass("Cache");
+            ClassName entry = cache.nestedClass("Entry");
+            ClassName stats = decoratorName.nestedClass("CacheStats");
+            TypeSpec.Builder decorator = TypeSpec.classBuilder(decoratorName)
+                    .addJavadoc("Caches the results of methods of $T\n", getInterfaceName())
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addSuperinterface(getInterfaceName())
+                    .addField(getInterfaceName(), "delegate", Modifier.PRIVATE, Modifier.FINAL)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(getInterfaceName(), "delegate")
+                            .addStatement("this.delegate = delegate")
+                            .build());
+            TypeName statsMap = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), stats);
+            MethodSpec.Builder statsMethod = MethodSpec.methodBuilder("stats")
+                    .addJavadoc("@return the statistics of each cached method, by signature\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(statsMap)
+                    .addStatement("$T stats = new $T<>()", statsMap, LinkedHashMap.class);
+            MethodSpec.Builder invalidateAll = MethodSpec.methodBuilder("invalidateAll")
+                    .addJavadoc("Discard every cached result\n")
+                    .addModifiers(Modifier.PUBLIC);
+            Set<String> cacheNames = new HashSet<>();
+            Set<String> cached = new HashSet<>();
+            for (MethodSpec method : methods) {
+                CodeBlock arguments = method.parameters.stream()
+                        .map(p -> CodeBlock.of("$N", p.name))
+                        .collect(CodeBlock.joining(", "));
+                MethodSpec.Builder delegating = MethodSpec.methodBuilder(method.name)
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(method.returnType)
+                        .addParameters(method.parameters)
+                        .varargs(method.varargs);
+                long[] caching = cachedMethods.get(method.name);
+                if (caching == null) {
+                    delegating.addStatement(TypeName.VOID.equals(method.returnType) ? "this.delegate.$N($L)" : "return this.delegate.$N($L)",
+                            method.name, arguments);
+                    decorator.addMethod(delegating.build());
+                    continue;
+                }
+                if (method.parameters.isEmpty() || TypeName.VOID.equals(method.returnType)) {
+                    throw new IllegalArgumentException("Only methods with parameters and a result can be cached, not " + method.name);
+                }
+                cached.add(method.name);
+                String cacheName = method.name + "Cache";
+                for (int i = 1; !cacheNames.add(cacheName); i++) {
+                    cacheName = method.name + i + "Cache";
+                }
+                TypeName key;
+                if (method.parameters.size() == 1 && !(method.parameters.get(0).type instanceof ArrayTypeName)) {
+                    key = method.parameters.get(0).type.box();
+                    delegating.addStatement("$T key = $N", key, method.parameters.get(0).name);
+                } else {
+                    key = decoratorName.nestedClass(Character.toUpperCase(cacheName.charAt(0))
+                            + cacheName.substring(1, cacheName.length() - "Cache".length()) + "Key");
+                    decorator.addType(makeCacheKey((ClassName) key, method.parameters));
+                    delegating.addStatement("$T key = new $T($L)", key, key, arguments);
+                }
+                TypeName result = method.returnType.box();
+                int maxSize = (int) caching[0];
+                int segments = Math.min(CACHE_SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize / CACHE_SEGMENTS)));
+                String signature = method.name + method.parameters.stream()
+                        .map(p -> p.type.toString())
+                        .collect(Collectors.joining(",", "(", ")"));
+                decorator.addField(FieldSpec.builder(ParameterizedTypeName.get(cache, key, result), cacheName, Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>($L, $L, $LL)", cache, maxSize, segments, TimeUnit.MILLISECONDS.toNanos(caching[1]))
+                        .build());
+                statsMethod.addStatement("stats.put($S, this.$N.stats())", signature, cacheName);
+                invalidateAll.addStatement("this.$N.invalidateAll()", cacheName);
+                decorator.addMethod(delegating
+                        .addStatement("$T cached = this.$N.get(key)", ParameterizedTypeName.get(entry, result), cacheName)
+                        .beginControlFlow("if (cached != null)")
+                        .addStatement("return cached.value")
+                        .endControlFlow()
+                        .addStatement("$T result = this.delegate.$N($L)", method.returnType, method.name, arguments)
+                        .addStatement("this.$N.put(key, result)", cacheName)
+                        .addStatement("return result")
+                        .build());
+            }
+            for (String name : cachedMethods.keySet()) {
+                if (!cached.contains(name)) {
+                    throw new IllegalArgumentException("No method " + name + " to cache");
+                }
+            }
+            return decorator.addMethod(statsMethod.addStatement("return stats").build())
+                    .addMethod(invalidateAll.build())
+                    .addType(makeCache(cache, entry, stats))
+                    .addType(makeCacheStats(stats));
+        }
+        
+        private TypeSpec makeCacheKey(ClassName keyName, List<ParameterSpec> parameters) {
+            TypeSpec.Builder key = TypeSpec.classBuilder(keyName)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+            MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+            for (ParameterSpec parameter : parameters) {
+                key.addField(parameter.type, parameter.name, Modifier.PRIVATE, Modifier.FINAL);
+                constructor.addParameter(parameter.type, parameter.name);
+                if (parameter.type instanceof ArrayTypeName) {
+                    // Copied, so that the caller changing the array does not change a cached key
+                    constructor.addStatement("this.$N = $N == null ? null : $N.clone()", parameter.name, parameter.name, parameter.name);
+                } else {
+                    constructor.addStatement("this.$N = $N", parameter.name, parameter.name);
+                }
+            }
+            key.addMethod(constructor.build());
+            return EqualsSpec.forType(key)
+                    .withHashCodeCaching(EqualsSpec.HashCodeCaching.EAGER)
+                    .withArrayContentEquality()
+                    .build()
+                    .build();
+        }
+        
+        private TypeSpec makeCache(ClassName cache, ClassName entry, ClassName stats) {
+            TypeVariableName k = TypeVariableName.get("K");
+            TypeVariableName v = TypeVariableName.get("V");
+            TypeName entryType = ParameterizedTypeName.get(entry, v);
+            ClassName segmentName = cache.nestedClass("Segment");
+            TypeName segment = ParameterizedTypeName.get(segmentName, k, v);
+            TypeSpec entryClass = TypeSpec.classBuilder(entry)
+                    .addModifiers(Modifier.STATIC, Modifier.FINAL)
+                    .addTypeVariable(v)
+                    .addField(v, "value", Modifier.FINAL)
+                    .addField(long.class, "expiresAt", Modifier.FINAL)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addParameter(v, "value")
+                            .addParameter(long.class, "expiresAt")
+                            .addStatement("this.value = value")
+                            .addStatement("this.expiresAt = expiresAt")
+                            .build())
+                    .build();
+            TypeSpec segmentClass = TypeSpec.classBuilder(segmentName)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .addTypeVariables(Arrays.asList(k, v))
+                    .superclass(ParameterizedTypeName.get(ClassName.get(LinkedHashMap.class), k, entryType))
+                    .addField(int.class, "capacity", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(LongAdder.class, "evictions", Modifier.PRIVATE, Modifier.FINAL)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addParameter(int.class, "capacity")
+                            .addParameter(LongAdder.class, "evictions")
+                            .addStatement("super(capacity + capacity / 3 + 1, 0.75f, true)")
+                            .addStatement("this.capacity = capacity")
+                            .addStatement("this.evictions = evictions")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("removeEldestEntry")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PROTECTED)
+                            .addParameter(ParameterizedTypeName.get(ClassName.get(Map.Entry.class), k, entryType), "eldest")
+                            .returns(boolean.class)
+                            .beginControlFlow("if (size() > capacity)")
+                            .addStatement("evictions.increment()")
+                            .addStatement("return true")
+                            .endControlFlow()
+                            .addStatement("return false")
+                            .build())
+                    .build();
+            return TypeSpec.classBuilder(cache)
+                    .addJavadoc("Segments of least recently used entries, each locked independently\n")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .addTypeVariables(Arrays.asList(k, v))
+                    .addField(ArrayTypeName.of(segment), "segments", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(long.class, "ttlNanos", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(FieldSpec.builder(LongAdder.class, "hits", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addField(FieldSpec.builder(LongAdder.class, "misses", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addField(FieldSpec.builder(LongAdder.class, "evictions", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addField(FieldSpec.builder(LongAdder.class, "expirations", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                            .addParameter(int.class, "maxSize")
+                            .addParameter(int.class, "segmentCount")
+                            .addParameter(long.class, "ttlNanos")
+                            .addStatement("this.segments = new $T[segmentCount]", segmentName)
+                            .beginControlFlow("for (int i = 0; i < segmentCount; i++)")
+                            .addStatement("int capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0)")
+                            .addStatement("this.segments[i] = new $T<>(capacity, evictions)", segmentName)
+                            .endControlFlow()
+                            .addStatement("this.ttlNanos = ttlNanos")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("segment")
+                            .addModifiers(Modifier.PRIVATE)
+                            .addParameter(k, "key")
+                            .returns(segment)
+                            .addStatement("int hash = key == null ? 0 : key.hashCode()")
+                            .addStatement("return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)]")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("get")
+                            .addJavadoc("@param key\n@return the entry of key, or null if absent or expired\n")
+                            .addParameter(k, "key")
+                            .returns(entryType)
+                            .addStatement("$T segment = segment(key)", segment)
+                            .addStatement("$T entry", entryType)
+                            .beginControlFlow("synchronized (segment)")
+                            .addStatement("entry = segment.get(key)")
+                            .beginControlFlow("if (entry != null && ttlNanos > 0 && $T.nanoTime() - entry.expiresAt >= 0)", System.class)
+                            .addStatement("segment.remove(key)")
+                            .addStatement("expirations.increment()")
+                            .addStatement("entry = null")
+                            .endControlFlow()
+                            .endControlFlow()
+                            .beginControlFlow("if (entry == null)")
+                            .addStatement("misses.increment()")
+                            .nextControlFlow("else")
+                            .addStatement("hits.increment()")
+                            .endControlFlow()
+                            .addStatement("return entry")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("put")
+                            .addParameter(k, "key")
+                            .addParameter(v, "value")
+                            .addStatement("$T entry = new $T<>(value, ttlNanos > 0 ? $T.nanoTime() + ttlNanos : 0L)", entryType, entry, System.class)
+                            .addStatement("$T segment = segment(key)", segment)
+                            .beginControlFlow("synchronized (segment)")
+                            .addStatement("segment.put(key, entry)")
+                            .endControlFlow()
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("invalidateAll")
+                            .beginControlFlow("for ($T segment : segments)", segment)
+                            .beginControlFlow("synchronized (segment)")
+                            .addStatement("segment.clear()")
+                            .endControlFlow()
+                            .endControlFlow()
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("stats")
+                            .returns(stats)
+                            .addStatement("long size = 0")
+                            .beginControlFlow("for ($T segment : segments)", segment)
+                            .beginControlFlow("synchronized (segment)")
+                            .addStatement("size += segment.size()")
+                            .endControlFlow()
+                            .endControlFlow()
+                            .addStatement("return new $T(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size)", stats)
+                            .build())
+                    .addType(entryClass)
+                    .addType(segmentClass)
+                    .build();
+        }
+        
+        private TypeSpec makeCacheStats(ClassName stats) {
+            TypeSpec.Builder builder = TypeSpec.classBuilder(stats)
+                    .addJavadoc("Statistics of the cache of one method\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+            MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+            for (String name : new String[]{"hits", "misses", "evictions", "expirations", "size"}) {
+                builder.addField(long.class, name, Modifier.PRIVATE, Modifier.FINAL)
+                        .addMethod(MethodSpec.methodBuilder("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1))
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(long.class)
+                                .addStatement("return $N", name)
+                                .build());
+                constructor.addParameter(long.class, name)
+                        .addStatement("this.$N = $N", name, name);
+            }
+            return builder.addMethod(constructor.build())
+                    .addMethod(MethodSpec.methodBuilder("getHitRate")
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(double.class)
+                            .addStatement("long requests = hits + misses")
+                            .addStatement("return requests == 0 ? 0.0 : (double) hits / requests")
+                            .build())
+                    .build();
+        }
+        
+        private TypeSpec.Builder makeAsyncFacade(ClassName facadeName, List<MethodSpec> methods) {
+            ClassName batcher = facadeName.nestedClass("Batcher");
+            ClassName bulk = facadeName.nestedClass("Bulk");
+            TypeSpec.Builder facade = TypeSpec.classBuilder(facadeName)
+                    .addJavadoc("Asynchronous facade of $T\n", getInterfaceName())
+                    .addModifiers(Modifier.PUBLIC)
+                    .addField(getInterfaceName(), "delegate", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(Executor.class, "executor", Modifier.PRIVATE, Modifier.FINAL);
+            TypeSpec.Builder bulkInterface = TypeSpec.interfaceBuilder(bulk)
+                    .addJavadoc("Bulk implementation of the batched methods, returning one result for each request in\n"
+                            + "the same order\n")
+                    .addModifiers(Modifier.PUBLIC);
+            MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(getInterfaceName(), "delegate");
+            MethodSpec.Builder flush = MethodSpec.methodBuilder("flush")
+                    .addJavadoc("Dispatch every waiting batch now\n")
+                    .addModifiers(Modifier.PUBLIC);
+            if (!batchedMethods.isEmpty()) {
+                constructor.addParameter(bulk, "bulk");
+            }
+            constructor.addParameter(Executor.class, "executor");
+            if (!batchedMethods.isEmpty()) {
+                constructor.addParameter(ScheduledExecutorService.class, "scheduler");
+            }
+            constructor.addStatement("this.delegate = delegate")
+                    .addStatement("this.executor = executor");
+            Set<String> batched = new HashSet<>();
+            for (MethodSpec method : methods) {
+                TypeName result = TypeName.VOID.equals(method.returnType) ? ClassName.get(Void.class) : method.returnType.box();
+                MethodSpec.Builder async = MethodSpec.methodBuilder(method.name)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), result))
+                        .addParameters(method.parameters)
+                        .varargs(method.varargs)
+                        .addJavadoc(method.javadoc);
+                long[] batching = batchedMethods.get(method.name);
+                if (batching != null) {
+                    if (method.parameters.size() != 1 || TypeName.VOID.equals(method.returnType)) {
+                        throw new IllegalArgumentException("Only methods with one parameter and a result can be batched, not " + method.name);
+                    }
+                    if (!batched.add(method.name)) {
+                        throw new IllegalStateException("Cannot batch overloaded method " + method.name);
+                    }
+                    TypeName request = method.parameters.get(0).type.box();
+                    String bulkName = method.name + "All";
+                    String batcherName = method.name + "Batcher";
+                    bulkInterface.addMethod(MethodSpec.methodBuilder(bulkName)
+                            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                            .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), request), "requests")
+                            .returns(ParameterizedTypeName.get(ClassName.get(List.class), result))
+                            .build());
+                    facade.addField(ParameterizedTypeName.get(batcher, request, result), batcherName, Modifier.PRIVATE, Modifier.FINAL);
+                    constructor.addStatement("this.$N = new $T<>(bulk::$N, $L, $LL, executor, scheduler)", batcherName, batcher, bulkName, batching[0], batching[1]);
+                    flush.addStatement("this.$N.flush()", batcherName);
+                    async.addStatement("return this.$N.submit($N)", batcherName, method.parameters.get(0).name);
+                } else {
+                    CodeBlock arguments = method.parameters.stream()
+                            .map(p -> CodeBlock.of("$N", p.name))
+                            .collect(CodeBlock.joining(", "));
+                    async.addStatement("return $T.$N(() -> this.delegate.$N($L), this.executor)", CompletableFuture.class,
+                            TypeName.VOID.equals(method.returnType) ? "runAsync" : "supplyAsync", method.name, arguments);
+                }
+                facade.addMethod(async.build());
+            }
+            for (String name : batchedMethods.keySet()) {
+                if (!batched.contains(name)) {
+                    throw new IllegalArgumentException("No method " + name + " to batch");
+                }
+            }
+            MethodSpec.Builder defaultExecutorConstructor = MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(getInterfaceName(), "delegate");
+            if (batchedMethods.isEmpty()) {
+                defaultExecutorConstructor.addStatement("this(delegate, $T.commonPool())", ForkJoinPool.class);
+            } else {
+                defaultExecutorConstructor.addParameter(bulk, "bulk")
+                        .addParameter(ScheduledExecutorService.class, "scheduler")
+                        .addStatement("this(delegate, bulk, $T.commonPool(), scheduler)", ForkJoinPool.class);
+                facade.addMethod(flush.build())
+                        .addType(bulkInterface.build())
+                        .addType(makeBatcher(batcher));
+            }
+            facade.methodSpecs.add(0, constructor.build());
+            facade.methodSpecs.add(0, defaultExecutorConstructor.build());
+            return facade;
+        }
+        
+        private TypeSpec makeBatcher(ClassName batcher) {
+            TypeVariableName p = TypeVariableName.get("P");
+            TypeVariableName r = TypeVariableName.get("R");
+            TypeName requests = ParameterizedTypeName.get(ClassName.get(List.class), p);
+            TypeName future = ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), r);
+            TypeName futures = ParameterizedTypeName.get(ClassName.get(List.class), future);
+            TypeName bulk = ParameterizedTypeName.get(ClassName.get(Function.class), requests, ParameterizedTypeName.get(ClassName.get(List.class), r));
+            return TypeSpec.classBuilder(batcher)
+                    .addJavadoc("Collects requests until there are maxSize of them, or windowMillis after the first\n")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .addTypeVariables(Arrays.asList(p, r))
+                    .addField(bulk, "bulk", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(int.class, "maxSize", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(long.class, "windowMillis", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(Executor.class, "executor", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(ScheduledExecutorService.class, "scheduler", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(requests, "requests", Modifier.PRIVATE)
+                    .addField(futures, "futures", Modifier.PRIVATE)
+                    .addField(ParameterizedTypeName.get(ClassName.get(ScheduledFuture.class), WildcardTypeName.subtypeOf(Object.class)), "timer", Modifier.PRIVATE)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addParameter(bulk, "bulk")
+                            .addParameter(int.class, "maxSize")
+                            .addParameter(long.class, "windowMillis")
+                            .addParameter(Executor.class, "executor")
+                            .addParameter(ScheduledExecutorService.class, "scheduler")
+                            .addStatement("this.bulk = bulk")
+                            .addStatement("this.maxSize = maxSize")
+                            .addStatement("this.windowMillis = windowMillis")
+                            .addStatement("this.executor = executor")
+                            .addStatement("this.scheduler = scheduler")
+                            .addStatement("this.requests = new $T<>(maxSize)", ArrayList.class)
+                            .addStatement("this.futures = new $T<>(maxSize)", ArrayList.class)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("submit")
+                            .addParameter(p, "request")
+                            .returns(future)
+                            .addStatement("$T future = new $T<>()", future, CompletableFuture.class)
+                            .addStatement("$T full = null", requests)
+                            .addStatement("$T fullFutures = null", futures)
+                            .beginControlFlow("synchronized (this)")
+                            .addStatement("requests.add(request)")
+                            .addStatement("futures.add(future)")
+                            .beginControlFlow("if (requests.size() >= maxSize)")
+                            .addStatement("full = requests")
+                            .addStatement("fullFutures = futures")
+                            .addStatement("take()")
+                            .nextControlFlow("else if (timer == null)")
+                            .addStatement("timer = scheduler.schedule(this::flush, windowMillis, $T.MILLISECONDS)", TimeUnit.class)
+                            .endControlFlow()
+                            .endControlFlow()
+                            .beginControlFlow("if (full != null)")
+                            .addStatement("dispatch(full, fullFutures)")
+                            .endControlFlow()
+                            .addStatement("return future")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("flush")
+                            .addStatement("$T waiting", requests)
+                            .addStatement("$T waitingFutures", futures)
+                            .beginControlFlow("synchronized (this)")
+                            .beginControlFlow("if (requests.isEmpty())")
+                            .addStatement("return")
+                            .endControlFlow()
+                            .addStatement("waiting = requests")
+                            .addStatement("waitingFutures = futures")
+                            .addStatement("take()")
+                            .endControlFlow()
+                            .addStatement("dispatch(waiting, waitingFutures)")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("take")
+                            .addJavadoc("Start a new batch, holding the lock\n")
+                            .addModifiers(Modifier.PRIVATE)
+                            .addStatement("requests = new $T<>(maxSize)", ArrayList.class)
+                            .addStatement("futures = new $T<>(maxSize)", ArrayList.class)
+                            .beginControlFlow("if (timer != null)")
+                            .addStatement("timer.cancel(false)")
+                            .addStatement("timer = null")
+                            .endControlFlow()
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("dispatch")
+                            .addModifiers(Modifier.PRIVATE)
+                            .addParameter(requests, "batch", Modifier.FINAL)
+                            .addParameter(futures, "batchFutures", Modifier.FINAL)
+                            .addCode(CodeBlock.builder()
+                                    .add("executor.execute(() -> {\n").indent()
+                                    .beginControlFlow("try")
+                                    .addStatement("$T results = bulk.apply(batch)", ParameterizedTypeName.get(ClassName.get(List.class), r))
+                                    .beginControlFlow("if (results.size() != batch.size())")
+                                    .addStatement("throw new $T($S + batch.size() + $S + results.size())", IllegalStateException.class,
+                                            "Bulk call of ", " requests returned ")
+                                    .endControlFlow()
+                                    .beginControlFlow("for (int i = 0; i < results.size(); i++)")
+                                    .addStatement("batchFutures.get(i).complete(results.get(i))")
+                                    .endControlFlow()
+                                    .nextControlFlow("catch ($T e)", Throwable.class)
+                                    .beginControlFlow("for ($T future : batchFutures)", future)
+                                    .addStatement("future.completeExceptionally(e)")
+                                    .endControlFlow()
+                                    .endControlFlow()
+                                    .unindent().add("});\n")
+                                    .build())
+                            .build())
+                    .build();
+        }
+        
+        private TypeSpec.Builder makeDecorator(ClassName decoratorName, List<MethodSpec> methods) {
+            ClassName metrics = decoratorName.nestedClass("MethodMetrics");
+            ClassName snapshot = decoratorName.nestedClass("MetricsSnapshot");
+            TypeSpec.Builder decorator = TypeSpec.classBuilder(decoratorName)
+                    .addJavadoc("Records calls, errors and durations of each method of $T\n", getInterfaceName())
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addSuperinterface(getInterfaceName())
+                    .addField(getInterfaceName(), "delegate", Modifier.PRIVATE, Modifier.FINAL)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(getInterfaceName(), "delegate")
+                            .addStatement("this.delegate = delegate")
+                            .build());
+            TypeName snapshots = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), snapshot);
+            MethodSpec.Builder snapshotMethod = MethodSpec.methodBuilder("snapshot")
+                    .addJavadoc("@return the metrics of each method, by signature\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(snapshots)
+                    .addStatement("$T snapshots = new $T<>()", snapshots, LinkedHashMap.class);
+            Set<String> metricsNames = new HashSet<>();
+            for (MethodSpec method : methods) {
+                String metricsName = method.name + "Metrics";
+                for (int i = 1; !metricsNames.add(metricsName); i++) {
+                    metricsName = method.name + i + "Metrics";
+                }
+                String signature = method.name + method.parameters.stream()
+                        .map(p -> p.type.toString())
+                        .collect(Collectors.joining(",", "(", ")"));
+                decorator.addField(FieldSpec.builder(metrics, metricsName, Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", metrics)
+                        .build());
+                snapshotMethod.addStatement("snapshots.put($S, this.$N.snapshot($S))", signature, metricsName, signature);
+                CodeBlock arguments = method.parameters.stream()
+                        .map(p -> CodeBlock.of("$N", p.name))
+                        .collect(CodeBlock.joining(", "));
+                MethodSpec.Builder delegating = MethodSpec.methodBuilder(method.name)
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(method.returnType)
+                        .addParameters(method.parameters)
+                        .varargs(method.varargs)
+                        .addStatement("long start_ = $T.nanoTime()", System.class)
+                        .addStatement("boolean failed_ = true")
+                        .beginControlFlow("try");
+                if (TypeName.VOID.equals(method.returnType)) {
+                    delegating.addStatement("this.delegate.$N($L)", method.name, arguments)
+                            .addStatement("failed_ = false");
+                } else {
+                    delegating.addStatement("$T result_ = this.delegate.$N($L)", method.returnType, method.name, arguments)
+                            .addStatement("failed_ = false")
+                            .addStatement("return result_");
+                }
+                decorator.addMethod(delegating.nextControlFlow("finally")
+                        .addStatement("this.$N.record($T.nanoTime() - start_, failed_)", metricsName, System.class)
+                        .endControlFlow()
+                        .build());
+            }
+            return decorator.addMethod(snapshotMethod.addStatement("return snapshots").build())
+                    .addType(makeMethodMetrics(metrics, snapshot))
+                    .addType(makeMetricsSnapshot(snapshot));
+        }
+        
+        private TypeSpec makeMethodMetrics(ClassName metrics, ClassName snapshot) {
+            return TypeSpec.classBuilder(metrics)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .addField(FieldSpec.builder(LongAdder.class, "calls", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addField(FieldSpec.builder(LongAdder.class, "errors", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addField(FieldSpec.builder(LongAdder.class, "totalNanos", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T()", LongAdder.class)
+                            .build())
+                    .addField(FieldSpec.builder(LongAdder[].class, "histogram", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T[$L]", LongAdder.class, HISTOGRAM_BUCKETS)
+                            .build())
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .beginControlFlow("for (int i = 0; i < histogram.length; i++)")
+                            .addStatement("histogram[i] = new $T()", LongAdder.class)
+                            .endControlFlow()
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("record")
+                            .addParameter(TypeName.LONG, "nanos")
+                            .addParameter(TypeName.BOOLEAN, "failed")
+                            .addStatement("calls.increment()")
+                            .beginControlFlow("if (failed)")
+                            .addStatement("errors.increment()")
+                            .endControlFlow()
+                            .addStatement("totalNanos.add(nanos)")
+                            .addStatement("histogram[nanos <= 0 ? 0 : $L - $T.numberOfLeadingZeros(nanos)].increment()", HISTOGRAM_BUCKETS, Long.class)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("snapshot")
+                            .addParameter(String.class, "signature")
+                            .returns(snapshot)
+                            .addStatement("long[] counts = new long[histogram.length]")
+                            .beginControlFlow("for (int i = 0; i < counts.length; i++)")
+                            .addStatement("counts[i] = histogram[i].sum()")
+                            .endControlFlow()
+                            .addStatement("return new $T(signature, calls.sum(), errors.sum(), totalNanos.sum(), counts)", snapshot)
+                            .build())
+                    .build();
+        }
+        
+        private TypeSpec makeMetricsSnapshot(ClassName snapshot) {
+            TypeSpec.Builder builder = TypeSpec.classBuilder(snapshot)
+                    .addJavadoc("Metrics of one method, whose counters may have been read while other threads were\n"
+                            + "calling it, so they are not necessarily consistent with each other\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+            MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+            for (String name : new String[]{"signature", "calls", "errors", "totalNanos", "histogram"}) {
+                TypeName type = name.equals("signature") ? ClassName.get(String.class)
+                        : name.equals("histogram") ? TypeName.get(long[].class) : TypeName.LONG;
+                builder.addField(type, name, Modifier.PRIVATE, Modifier.FINAL);
+                constructor.addParameter(type, name)
+                        .addStatement("this.$N = $N", name, name);
+                if (!name.equals("histogram")) {
+                    builder.addMethod(MethodSpec.methodBuilder("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1))
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(type)
+                            .addStatement("return $N", name)
+                            .build());
+                }
+            }
+            return builder.addMethod(constructor.build())
+                    .addMethod(MethodSpec.methodBuilder("getMeanNanos")
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(TypeName.DOUBLE)
+                            .addStatement("return calls == 0 ? 0.0 : (double) totalNanos / calls")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("getHistogram")
+                            .addJavadoc("@return the number of calls taking 0ns in bucket 0, and between 2^(i-1) and\n"
+                                    + "2^i - 1ns in each later bucket i\n")
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(long[].class)
+                            .addStatement("return histogram.clone()")
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("getPercentileNanos")
+                            .addJavadoc("@param percentile between 0 and 100\n"
+                                    + "@return an upper bound of the duration of that percentile of calls, to within a\n"
+                                    + "factor of two\n")
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(TypeName.DOUBLE, "percentile")
+                            .returns(TypeName.LONG)
+                            .addStatement("long total = 0")
+                            .beginControlFlow("for (long count : histogram)")
+                            .addStatement("total += count")
+                            .endControlFlow()
+                            .addStatement("long rank = (long) Math.ceil(total * percentile / 100.0)")
+                            .addStatement("long seen = 0")
+                            .beginControlFlow("for (int i = 0; i < histogram.length; i++)")
+                            .addStatement("seen += histogram[i]")
+                            .beginControlFlow("if (seen >= rank && seen > 0)")
+                            .addStatement("return i == 0 ? 0L : (1L << i) - 1")
+                            .endControlFlow()
+                            .endControlFlow()
+                            .addStatement("return 0L")
+                            .build())
+                    .build();
         }
         
         private boolean hasOverride(Collection<AnnotationSpec> annotations) {
@@ -101,10 +844,17 @@ public class InterfaceSpec {
         
         private final TypeSpec.Builder interfaceBuilder;
         private final TypeSpec.Builder implementingTypeBuilder;
+        private final TypeSpec.Builder decoratorBuilder;
+        private final TypeSpec.Builder asyncFacadeBuilder;
+        private final TypeSpec.Builder cachingDecoratorBuilder;
         
-        InterfaceAndImplementingType(TypeSpec.Builder interfaceBuilder, TypeSpec.Builder implementingTypeBuilder) {
+        InterfaceAndImplementingType(TypeSpec.Builder interfaceBuilder, TypeSpec.Builder implementingTypeBuilder,
+                TypeSpec.Builder decoratorBuilder, TypeSpec.Builder asyncFacadeBuilder, TypeSpec.Builder cachingDecoratorBuilder) {
             this.interfaceBuilder = interfaceBuilder;
             this.implementingTypeBuilder = implementingTypeBuilder;
+            this.decoratorBuilder = decoratorBuilder;
+            this.asyncFacadeBuilder = asyncFacadeBuilder;
+            this.cachingDecoratorBuilder = cachingDecoratorBuilder;
         }
         
         public TypeSpec.Builder getInterface() {
@@ -115,5 +865,29 @@ public class InterfaceSpec {
             return implementingTypeBuilder;
         }
         
+        /**
+         * 
+         * @return the instrumented decorator, or null if not requested
+         */
+        public TypeSpec.Builder getDecorator() {
+            return decoratorBuilder;
+        }
+        
+        /**
+         * 
+         * @return the asynchronous facade, or null if not requested
+         */
+        public TypeSpec.Builder getAsyncFacade() {
+            return asyncFacadeBuilder;
+        }
+        
+        /**
+         * 
+         * @return the caching decorator, or null if not requested
+         */
+        public TypeSpec.Builder getCachingDecorator() {
+            return cachingDecoratorBuilder;
+        }
+        
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate a static intern(value) method, so that equal instances of an
+ * immutable class can share one canonical instance, and an of(...) factory
+ * that interns on construction if the class has a constructor taking every
+ * field, as generated by BuilderSpec.
+ *
+ * Interning relies on the equals and hashCode methods generated by EqualsSpec,
+ * whose equals already returns early when both instances are the same.
+ *
+ * The default table holds weak references in striped WeakHashMaps, so every
+ * equal value is canonicalised and unused values can be collected. A bounded
+ * table is a direct mapped cache of a fixed size, which never grows but only
+ * canonicalises values that do not collide.
+ *
+ * @author peter
+ */
+public class InternSpec {
+
+    static final String INTERNED = "INTERNED";
+    static final int SEGMENTS = 16;
+
+    public static InternSpec.Builder forType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(packageName, typeSpecBuilder);
+    }
+
+    public static class Builder {
+
+        private final String packageName;
+        private final TypeSpec.Builder typeSpecBuilder;
+        private final TypeSpec typeSpec;
+        private int capacity = 0;
+        private String factoryName = "of";
+
+        Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpecBuilder = typeSpecBuilder;
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
+        }
+
+        /**
+         * Use a direct mapped cache with a fixed number of entries, rounded up
+         * to a power of two, instead of a weak table
+         *
+         * @param capacity
+         * @return
+         */
+        public Builder withBoundedTable(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            return this;
+        }
+
+        public Builder withFactoryName(String name) {
+            this.factoryName = name;
+            return this;
+        }
+
+        public TypeSpec.Builder build() {
+            if (!typeSpec.typeVariables.isEmpty()) {
+                throw new IllegalArgumentException("Cannot intern generic type " + typeSpec.name);
+            }
+            boolean hasEquals = false;
+            boolean hasHashCode = false;
+            for (MethodSpec method : typeSpec.methodSpecs) {
+                hasEquals |= "equals".equals(method.name) && method.parameters.size() == 1;
+                hasHashCode |= "hashCode".equals(method.name) && method.parameters.isEmpty();
+            }
+            if (!hasEquals || !hasHashCode) {
+                throw new IllegalStateException("Apply EqualsSpec to " + typeSpec.name + " before interning");
+            }
+            List<FieldSpec> fields = new ArrayList<>();
+            for (FieldSpec field : typeSpec.fieldSpecs) {
+                if (!field.hasModifier(Modifier.STATIC) && !EqualsSpec.isHashCodeCache(field)) {
+                    if (!field.hasModifier(Modifier.FINAL)) {
+                        throw new IllegalStateException("Field " + field.name + " of " + typeSpec.name + " is not final");
+                    }
+                    fields.add(field);
+                }
+            }
+            ClassName typeName = ClassName.get(packageName, typeSpec.name);
+            if (capacity > 0) {
+                addBoundedTable(typeName);
+            } else {
+                addWeakTable(typeName);
+            }
+            for (MethodSpec method : typeSpec.methodSpecs) {
+                if (method.isConstructor() && matches(method.parameters, fields)) {
+                    MethodSpec.Builder factory = MethodSpec.methodBuilder(factoryName)
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                            .returns(typeName);
+                    CodeBlock.Builder arguments = CodeBlock.builder();
+                    for (ParameterSpec parameter : method.parameters) {
+                        factory.addParameter(parameter.type, parameter.name);
+                        arguments.add(arguments.isEmpty() ? "$N" : ", $N", parameter.name);
+                    }
+                    typeSpecBuilder.addMethod(factory
+                            .addStatement("return intern(new $T($L))", typeName, arguments.build())
+                            .build());
+                }
+            }
+            return typeSpecBuilder;
+        }
+
+        private void addWeakTable(ClassName typeName) {
+            TypeName segment = ParameterizedTypeName.get(ClassName.get(WeakHashMap.class), typeName,
+                    ParameterizedTypeName.get(ClassName.get(WeakReference.class), typeName));
+            ArrayTypeName segments = ArrayTypeName.of(segment);
+            typeSpecBuilder.addField(FieldSpec.builder(segments, INTERNED, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("newInternedSegments()")
+                    .build());
+            typeSpecBuilder.addMethod(MethodSpec.methodBuilder("newInternedSegments")
+                    .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(segments)
+                    .addStatement("$T segments = new $T[$L]", segments, WeakHashMap.class, SEGMENTS)
+                    .beginControlFlow("for (int i = 0; i < segments.length; i++)")
+                    .addStatement("segments[i] = new $T<>()", WeakHashMap.class)
+                    .endControlFlow()
+                    .addStatement("return segments")
+                    .build());
+            typeSpecBuilder.addMethod(MethodSpec.methodBuilder("intern")
+                    .addJavadoc("@param value\n@return the canonical instance equal to value\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(typeName, "value")
+                    .returns(typeName)
+                    .addStatement("int hash = value.hashCode()")
+                    .addStatement("$T segment = $N[(hash ^ (hash >>> 16)) & $L]", segment, INTERNED, SEGMENTS - 1)
+                    .beginControlFlow("synchronized (segment)")
+                    .addStatement("$T reference = segment.get(value)", ParameterizedTypeName.get(ClassName.get(WeakReference.class), typeName))
+                    .addStatement("$T interned = reference == null ? null : reference.get()", typeName)
+                    .beginControlFlow("if (interned == null)")
+                    .addStatement("segment.put(value, new $T<>(value))", WeakReference.class)
+                    .addStatement("interned = value")
+                    .endControlFlow()
+                    .addStatement("return interned")
+                    .endControlFlow()
+                    .build());
+        }
+
+        private void addBoundedTable(ClassName typeName) {
+            TypeName table = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), typeName);
+            typeSpecBuilder.addField(FieldSpec.builder(table, INTERNED, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T<>($L)", AtomicReferenceArray.class, capacity)
+                    .build());
+            typeSpecBuilder.addMethod(MethodSpec.methodBuilder("intern")
+                    .addJavadoc("@param value\n@return a cached instance equal to value, or value itself\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(typeName, "value")
+                    .returns(typeName)
+                    .addStatement("int hash = value.hashCode()")
+                    .addStatement("int index = (hash ^ (hash >>> 16)) & $L", capacity - 1)
+                    .addStatement("$T cached = $N.get(index)", typeName, INTERNED)
+                    .beginControlFlow("if (value.equals(cached))")
+                    .addStatement("return cached")
+                    .endControlFlow()
+                    .addStatement("$N.lazySet(index, value)", INTERNED)
+                    .addStatement("return value")
+                    .build());
+        }
+    }
+
+    private static boolean matches(List<ParameterSpec> parameters, List<FieldSpec> fields) {
+        if (parameters.size() != fields.size()) {
+            return false;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            if (!parameters.get(i).type.equals(fields.get(i).type)) {
+                return false;
+            }
+        }
+        return !fields.isEmpty();
+    }
+}
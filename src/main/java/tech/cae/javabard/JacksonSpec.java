@@ -0,0 +1,367 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate Jackson streaming serializers and deserializers, which read and
+ * write fields directly rather than by reflection.
+ *
+ * The Serializer and Deserializer are nested in the class, so have access to
+ * private fields. The Deserializer sets fields through the Builder generated by
+ * BuilderSpec, so BuilderSpec must also be applied. Property names are the
+ * field names, or the value of a JsonProperty annotation on the field, which
+ * must be a string literal added with $S. Static, transient and JsonIgnore
+ * fields are skipped, but not those marked JsonIgnore(false). A null read into
+ * a primitive field gives zero or false. Fields of types other than
+ * primitives, boxed primitives and Strings are delegated to databind.
+ *
+ * The generated code depends on jackson-databind, which this library does not.
+ *
+ * @author peter
+ */
+public class JacksonSpec {
+
+    public static final String SERIALIZER = "Serializer";
+    public static final String DESERIALIZER = "Deserializer";
+    private static final ClassName JSON_GENERATOR = ClassName.get("com.fasterxml.jackson.core", "JsonGenerator");
+    private static final ClassName JSON_PARSER = ClassName.get("com.fasterxml.jackson.core", "JsonParser");
+    private static final ClassName JSON_TOKEN = ClassName.get("com.fasterxml.jackson.core", "JsonToken");
+    private static final ClassName TYPE_REFERENCE = ClassName.get("com.fasterxml.jackson.core.type", "TypeReference");
+    private static final ClassName SERIALIZED_STRING = ClassName.get("com.fasterxml.jackson.core.io", "SerializedString");
+    private static final ClassName SERIALIZER_PROVIDER = ClassName.get("com.fasterxml.jackson.databind", "SerializerProvider");
+    private static final ClassName DESERIALIZATION_CONTEXT = ClassName.get("com.fasterxml.jackson.databind", "DeserializationContext");
+    private static final ClassName STD_SERIALIZER = ClassName.get("com.fasterxml.jackson.databind.ser.std", "StdSerializer");
+    private static final ClassName STD_DESERIALIZER = ClassName.get("com.fasterxml.jackson.databind.deser.std", "StdDeserializer");
+    private static final ClassName SIMPLE_MODULE = ClassName.get("com.fasterxml.jackson.databind.module", "SimpleModule");
+
+    public static JacksonSpec.Builder forType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(packageName, typeSpecBuilder);
+    }
+
+    /**
+     * Generate a Module that registers the Serializer and Deserializer of
+     * each type
+     *
+     * @param packageName
+     * @param name
+     * @return
+     */
+    public static JacksonSpec.ModuleBuilder forModule(String packageName, String name) {
+        return new ModuleBuilder(packageName, name);
+    }
+
+    public static class Builder {
+
+        private final String packageName;
+        private final TypeSpec.Builder typeSpecBuilder;
+        private final TypeSpec typeSpec;
+        private String builderClassName = "Builder";
+
+        Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpecBuilder = typeSpecBuilder;
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
+        }
+
+        /**
+         * The name given to BuilderSpec.Builder.withBuilderClassName, if any
+         *
+         * @param name
+         * @return
+         */
+        public Builder withBuilderClassName(String name) {
+            this.builderClassName = name;
+            return this;
+        }
+
+        public ClassName getSerializerClassName() {
+            return ClassName.get(packageName, typeSpec.name, SERIALIZER);
+        }
+
+        public ClassName getDeserializerClassName() {
+            return ClassName.get(packageName, typeSpec.name, DESERIALIZER);
+        }
+
+        public TypeSpec.Builder build() {
+            if (!typeSpec.typeVariables.isEmpty()) {
+                throw new IllegalArgumentException("Cannot generate a serializer for generic type " + typeSpec.name);
+            }
+            ClassName typeName = ClassName.get(packageName, typeSpec.name);
+            List<FieldSpec> fields = new ArrayList<>();
+            for (FieldSpec field : typeSpec.fieldSpecs) {
+                if (field.hasModifier(Modifier.STATIC) || field.hasModifier(Modifier.TRANSIENT) || isIgnored(field)) {
+                    continue;
+                }
+                if (field.type instanceof TypeVariableName) {
+                    throw new IllegalArgumentException("Cannot serialize field " + field.name + " of type " + field.type);
+                }
+                fields.add(field);
+            }
+            typeSpecBuilder.addType(makeSerializer(typeName, fields));
+            typeSpecBuilder.addType(makeDeserializer(typeName, fields));
+            return typeSpecBuilder;
+        }
+
+        private TypeSpec makeSerializer(ClassName typeName, List<FieldSpec> fields) {
+            TypeSpec.Builder serializer = TypeSpec.classBuilder(SERIALIZER)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .superclass(ParameterizedTypeName.get(STD_SERIALIZER, typeName))
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addModifiers(Modifier.PUBLIC)
+                            .addStatement("super($T.class)", typeName)
+                            .build());
+            MethodSpec.Builder serialize = MethodSpec.methodBuilder("serialize")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(typeName, "value")
+                    .addParameter(JSON_GENERATOR, "gen")
+                    .addParameter(SERIALIZER_PROVIDER, "provider")
+                    .addException(IOException.class)
+                    .addStatement("gen.writeStartObject()");
+            for (FieldSpec field : fields) {
+                String constant = Names.constantName(field.name);
+                serializer.addField(FieldSpec.builder(SERIALIZED_STRING, constant, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T($S)", SERIALIZED_STRING, propertyName(field))
+                        .build());
+                serialize.addStatement("gen.writeFieldName($N)", constant);
+                TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+                if (field.type.isBoxedPrimitive()) {
+                    serialize.beginControlFlow("if (value.$N == null)", field.name)
+                            .addStatement("gen.writeNull()")
+                            .nextControlFlow("else");
+                }
+                if (TypeName.BOOLEAN.equals(type)) {
+                    serialize.addStatement("gen.writeBoolean(value.$N)", field.name);
+                } else if (TypeName.CHAR.equals(type)) {
+                    serialize.addStatement("gen.writeString($T.valueOf(value.$N))", String.class, field.name);
+                } else if (type.isPrimitive()) {
+                    serialize.addStatement("gen.writeNumber(value.$N)", field.name);
+                } else if (ClassName.get(String.class).equals(type)) {
+                    serialize.addStatement("gen.writeString(value.$N)", field.name);
+                } else {
+                    serialize.addStatement("provider.defaultSerializeValue(value.$N, gen)", field.name);
+                }
+                if (field.type.isBoxedPrimitive()) {
+                    serialize.endControlFlow();
+                }
+            }
+            serialize.addStatement("gen.writeEndObject()");
+            return serializer.addMethod(serialize.build()).build();
+        }
+
+        private TypeSpec makeDeserializer(ClassName typeName, List<FieldSpec> fields) {
+            ClassName builderName = typeName.nestedClass(builderClassName);
+            TypeSpec.Builder deserializer = TypeSpec.classBuilder(DESERIALIZER)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .superclass(ParameterizedTypeName.get(STD_DESERIALIZER, typeName))
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addModifiers(Modifier.PUBLIC)
+                            .addStatement("super($T.class)", typeName)
+                            .build());
+            MethodSpec.Builder deserialize = MethodSpec.methodBuilder("deserialize")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(JSON_PARSER, "p")
+                    .addParameter(DESERIALIZATION_CONTEXT, "ctxt")
+                    .addException(IOException.class)
+                    .returns(typeName)
+                    .addStatement("$T builder = new $T()", builderName, builderName)
+                    .addStatement("$T token = p.currentToken()", JSON_TOKEN)
+                    .beginControlFlow("if (token == $T.START_OBJECT)", JSON_TOKEN)
+                    .addStatement("token = p.nextToken()")
+                    .endControlFlow()
+                    .beginControlFlow("for (; token == $T.FIELD_NAME; token = p.nextToken())", JSON_TOKEN)
+                    .addStatement("$T name = p.currentName()", String.class)
+                    .addStatement("boolean isNull = p.nextToken() == $T.VALUE_NULL", JSON_TOKEN)
+                    .beginControlFlow("switch (name)");
+            for (FieldSpec field : fields) {
+                deserialize.addCode("case $S:\n", propertyName(field))
+                        .addStatement("$>builder.$N($L)", field.name, read(deserializer, field))
+                        .addStatement("break$<");
+            }
+            deserialize.addCode("default:\n")
+                    .addStatement("$>ctxt.handleUnknownProperty(p, this, $T.class, name)$<", typeName)
+                    .endControlFlow()
+                    .endControlFlow()
+                    .addStatement("return builder.build()");
+            return deserializer.addMethod(deserialize.build()).build();
+        }
+
+        private CodeBlock read(TypeSpec.Builder deserializer, FieldSpec field) {
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            CodeBlock value;
+            if (TypeName.CHAR.equals(type)) {
+                value = CodeBlock.of("p.getText().charAt(0)");
+            } else if (type.isPrimitive()) {
+                value = CodeBlock.of("p.get$LValue()", Names.prefix(type));
+            } else if (ClassName.get(String.class).equals(type)) {
+                return CodeBlock.of("p.getValueAsString()");
+            } else if (type instanceof ParameterizedTypeName) {
+                String constant = Names.constantName(field.name) + "_TYPE";
+                deserializer.addField(FieldSpec.builder(ParameterizedTypeName.get(TYPE_REFERENCE, type), constant,
+                        Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T<$T>() {}", TYPE_REFERENCE, type)
+                        .build());
+                value = CodeBlock.of("ctxt.readValue(p, ctxt.getTypeFactory().constructType($N))", constant);
+            } else {
+                value = CodeBlock.of("ctxt.readValue(p, $T.class)", type);
+            }
+            if (field.type.isPrimitive()) {
+                // As Jackson does without FAIL_ON_NULL_FOR_PRIMITIVES
+                return CodeBlock.of("isNull ? $L : $L", TypeName.BOOLEAN.equals(type) ? "false" : "0", value);
+            }
+            return CodeBlock.of("isNull ? null : $L", value);
+        }
+    }
+
+    public static class ModuleBuilder {
+
+        private final String packageName;
+        private final String name;
+        private final List<ClassName> types = new ArrayList<>();
+
+        ModuleBuilder(String packageName, String name) {
+            this.packageName = packageName;
+            this.name = name;
+        }
+
+        /**
+         * Register a type that has had a JacksonSpec applied
+         *
+         * @param type
+         * @return
+         */
+        public ModuleBuilder withType(ClassName type) {
+            types.add(type);
+            return this;
+        }
+
+        public ClassName getModuleClassName() {
+            return ClassName.get(packageName, name);
+        }
+
+        public TypeSpec.Builder build() {
+            MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PUBLIC)
+                    .addStatement("super($S)", name);
+            for (ClassName type : types) {
+                constructor.addStatement("addSerializer($T.class, new $T())", type, type.nestedClass(SERIALIZER));
+                constructor.addStatement("addDeserializer($T.class, new $T())", type, type.nestedClass(DESERIALIZER));
+            }
+            return TypeSpec.classBuilder(getModuleClassName())
+                    .addModifiers(Modifier.PUBLIC)
+                    .superclass(SIMPLE_MODULE)
+                    .addMethod(constructor.build());
+        }
+    }
+
+    /**
+     * The value of a JsonProperty annotation on a field, or the field name if
+     * there is none or it is empty
+     *
+     * @param field
+     * @return
+     */
+    static String propertyName(FieldSpec field) {
+        for (AnnotationSpec annotation : field.annotations) {
+            if (annotation.type.equals(ClassName.get(JsonProperty.class)) && annotation.members.containsKey("value")) {
+                String value = stringLiteral(field, annotation.members.get("value"));
+                return value.isEmpty() ? field.name : value;
+            }
+        }
+        return field.name;
+    }
+
+    /**
+     * Whether a field has a JsonIgnore annotation, not JsonIgnore(false)
+     *
+     * @param field
+     * @return
+     */
+    static boolean isIgnored(FieldSpec field) {
+        for (AnnotationSpec annotation : field.annotations) {
+            if (annotation.type.equals(ClassName.get(JsonIgnore.class))) {
+                List<CodeBlock> value = annotation.members.get("value");
+                if (value == null) {
+                    return true;
+                }
+                String literal = value.size() == 1 ? value.get(0).toString().trim() : "";
+                if (!"true".equals(literal) && !"false".equals(literal)) {
+                    throw new IllegalArgumentException("JsonIgnore of field " + field.name + " is not a boolean literal: " + value);
+                }
+                return "true".equals(literal);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The value of an annotation member written as addMember("value", "$S",
+     * name), and not any other expression
+     */
+    private static String stringLiteral(FieldSpec field, List<CodeBlock> member) {
+        String code = member.size() == 1 ? member.get(0).toString() : "";
+        // $S splits a value with line breaks into a concatenation, one literal per line
+        String literal = code.replaceAll("\"\\s*\\+\\s*\"", "");
+        if (literal.length() < 2 || literal.charAt(0) != '"' || literal.charAt(literal.length() - 1) != '"') {
+            throw notStringLiteral(field, code);
+        }
+        StringBuilder value = new StringBuilder();
+        try {
+            for (int i = 1; i < literal.length() - 1; i++) {
+                char c = literal.charAt(i);
+                if (c == '\\' && i + 1 < literal.length() - 1) {
+                    c = literal.charAt(++i);
+                    int escape = "btnfr\"'\\".indexOf(c);
+                    if (c == 'u' && i + 4 < literal.length() - 1) {
+                        c = (char) Integer.parseInt(literal.substring(i + 1, i + 5), 16);
+                        i += 4;
+                    } else if (escape >= 0) {
+                        c = "\b\t\n\f\r\"'\\".charAt(escape);
+                    }
+                }
+                value.append(c);
+            }
+        } catch (NumberFormatException ex) {
+            throw notStringLiteral(field, code);
+        }
+        // Anything else, such as a concatenation that $S would not have written, is rejected
+        if (!CodeBlock.of("$S", value.toString()).toString().equals(code)) {
+            throw notStringLiteral(field, code);
+        }
+        return value.toString();
+    }
+    
+    private static IllegalArgumentException notStringLiteral(FieldSpec field, String code) {
+        return new IllegalArgumentException("JsonProperty of field " + field.name + " is not a string literal: " + code);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Names of generated members, and the names and default values of types,
+ * shared between the specs
+ *
+ * @author peter
+ */
+final class Names {
+
+    private Names() {
+    }
+
+    /**
+     * The name of an accessor of a field, such as get$N for a getter
+     *
+     * @param namingConvention
+     * @param fieldName
+     * @return
+     */
+    static String accessorName(String namingConvention, String fieldName) {
+        if (namingConvention.indexOf("$N") > 0) {
+            return namingConvention.replace("$N", toCamelCase(fieldName));
+        }
+        return namingConvention.replace("$N", fieldName);
+    }
+
+    private static String toCamelCase(String a) {
+        return new String(new char[]{Character.toUpperCase(a.charAt(0))}) + a.substring(1);
+    }
+
+    /**
+     * A camel case name in upper case, with words separated by underscores
+     *
+     * @param name
+     * @return
+     */
+    static String constantName(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The capitalized name of a primitive type, or Object, as in the names of
+     * methods such as getInt and writeDouble
+     *
+     * @param type
+     * @return
+     */
+    static String prefix(TypeName type) {
+        if (TypeName.OBJECT.equals(type)) {
+            return "Object";
+        }
+        String name = type.toString();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * The default value of a field of a type, cast to the type if it is a
+     * primitive other than int or boolean
+     *
+     * @param type
+     * @return
+     */
+    static CodeBlock defaultValue(TypeName type) {
+        if (TypeName.BOOLEAN.equals(type)) {
+            return CodeBlock.of("false");
+        } else if (!type.isPrimitive()) {
+            return CodeBlock.of("null");
+        } else if (TypeName.INT.equals(type)) {
+            return CodeBlock.of("0");
+        }
+        return CodeBlock.of("($T) 0", type);
+    }
+}
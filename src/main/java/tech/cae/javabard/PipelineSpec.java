@@ -0,0 +1,307 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Apply several stages to a type from a single snapshot of it, merging what
+ * they contribute.
+ *
+ * Every stage works on its own copy of the type, made from the one snapshot,
+ * and sees the type as it was before the pipeline; stages that depend on
+ * each other's output (such as InternSpec on EqualsSpec) belong in separate
+ * pipelines. Field stages are called for every field in a single pass over
+ * the fields, then every stage is called for the type.
+ *
+ * The fields, methods and nested types of the result are those of the
+ * original type, with any that a stage replaced (e.g. by making a field
+ * volatile) in their place, followed by those the stages added, in stage
+ * order. Superinterfaces, annotations and modifiers the stages added are
+ * also merged. Two stages adding a member with the same name (or signature,
+ * for methods), replacing the same member differently, or a stage removing a
+ * field, method or nested type, is an IllegalStateException.
+ *
+ * Any other change a stage makes to its copy is dropped: removing
+ * superinterfaces, annotations or modifiers, and any change to the type
+ * variables, enum constants, originating elements, javadoc, superclass, or
+ * initializer and static blocks. javapoet does not expose the last four on a
+ * builder, so they are not checked: stages that change them must be applied
+ * outside a pipeline.
+ *
+ * A pipeline is immutable, so one can be applied to any number of types,
+ * including as a BatchSpec stage: {@code withStage(pipeline::apply)}.
+ *
+ * @author peter
+ */
+public class PipelineSpec {
+
+    /**
+     * One step of a pipeline, adding to or replacing members of its own copy
+     * of the type
+     */
+    public interface Stage {
+
+        /**
+         * Called for each field of the type, in order
+         *
+         * @param packageName
+         * @param typeSpec the type before the pipeline
+         * @param field
+         * @param target this stage's copy of the type
+         */
+        default void field(String packageName, TypeSpec typeSpec, FieldSpec field, TypeSpec.Builder target) {
+        }
+
+        /**
+         * Called once after every field
+         *
+         * @param packageName
+         * @param typeSpec the type before the pipeline
+         * @param target this stage's copy of the type
+         */
+        default void type(String packageName, TypeSpec typeSpec, TypeSpec.Builder target) {
+        }
+    }
+
+    private final List<String> names;
+    private final List<Stage> stages;
+
+    PipelineSpec(List<String> names, List<Stage> stages) {
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    public static PipelineSpec.Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A stage adding a getter for each field, as GetterSpec.forField
+     *
+     * @param namingConvention
+     * @return
+     */
+    public static Stage getters(String namingConvention) {
+        return new Stage() {
+            @Override
+            public void field(String packageName, TypeSpec typeSpec, FieldSpec field, TypeSpec.Builder target) {
+                target.addMethod(GetterSpec.forField(field, namingConvention).build());
+            }
+        };
+    }
+
+    /**
+     * A stage adding a setter for each field that SetterSpec.forType would,
+     * as SetterSpec.forField
+     *
+     * @param namingConvention
+     * @return
+     */
+    public static Stage setters(String namingConvention) {
+        return new Stage() {
+            @Override
+            public void field(String packageName, TypeSpec typeSpec, FieldSpec field, TypeSpec.Builder target) {
+                if (SetterSpec.hasSetter(field)) {
+                    target.addMethod(SetterSpec.forField(field, namingConvention, null).build());
+                }
+            }
+        };
+    }
+
+    /**
+     * A stage applying any spec to the type, such as
+     * {@code (p, b) -> EqualsSpec.forType(p, b).build()}. The spec's own
+     * snapshot of its copy is the pipeline's snapshot, so it is not built
+     * again.
+     *
+     * @param spec
+     * @return
+     */
+    public static Stage spec(BiFunction<String, TypeSpec.Builder, TypeSpec.Builder> spec) {
+        return new Stage() {
+            @Override
+            public void type(String packageName, TypeSpec typeSpec, TypeSpec.Builder target) {
+                spec.apply(packageName, target);
+            }
+        };
+    }
+
+    /**
+     * Apply every stage to a type
+     *
+     * @param packageName
+     * @param typeSpecBuilder
+     * @return typeSpecBuilder, with the members of every stage
+     */
+    public TypeSpec.Builder apply(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        TypeSpec typeSpec = typeSpecBuilder.build();
+        List<TypeSpec.Builder> targets = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            TypeSpec.Builder target = typeSpec.toBuilder();
+            TypeSpecSnapshot.put(target, typeSpec);
+            targets.add(target);
+        }
+        for (FieldSpec field : typeSpec.fieldSpecs) {
+            for (int i = 0; i < stages.size(); i++) {
+                stages.get(i).field(packageName, typeSpec, field, targets.get(i));
+            }
+        }
+        for (int i = 0; i < stages.size(); i++) {
+            stages.get(i).type(packageName, typeSpec, targets.get(i));
+        }
+        replace(typeSpecBuilder.fieldSpecs, merge("field", typeSpec.fieldSpecs,
+                targets.stream().map(t -> t.fieldSpecs).collect(Collectors.toList()), f -> f.name));
+        replace(typeSpecBuilder.methodSpecs, merge("method", typeSpec.methodSpecs,
+                targets.stream().map(t -> t.methodSpecs).collect(Collectors.toList()), PipelineSpec::signature));
+        replace(typeSpecBuilder.typeSpecs, merge("type", typeSpec.typeSpecs,
+                targets.stream().map(t -> t.typeSpecs).collect(Collectors.toList()), t -> t.name));
+        for (TypeSpec.Builder target : targets) {
+            target.superinterfaces.stream()
+                    .filter(si -> !typeSpecBuilder.superinterfaces.contains(si))
+                    .forEach(typeSpecBuilder::addSuperinterface);
+            target.annotations.stream()
+                    .filter(a -> !typeSpecBuilder.annotations.contains(a))
+                    .forEach(typeSpecBuilder::addAnnotation);
+            target.modifiers.stream()
+                    .filter(m -> !typeSpecBuilder.modifiers.contains(m))
+                    .forEach(typeSpecBuilder.modifiers::add);
+        }
+        return typeSpecBuilder;
+    }
+
+    private static <T> void replace(List<T> members, List<T> merged) {
+        members.clear();
+        members.addAll(merged);
+    }
+
+    /**
+     * Merge the members of every stage's copy of a list, checking for
+     * conflicts and removed members
+     */
+    private <T> List<T> merge(String kind, List<T> original, List<List<T>> stageMembers, Function<T, String> key) {
+        Set<T> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        unchanged.addAll(original);
+        Map<String, Integer> originalIndices = new HashMap<>();
+        for (int i = 0; i < original.size(); i++) {
+            originalIndices.put(key.apply(original.get(i)), i);
+        }
+        List<T> merged = new ArrayList<>(original);
+        Map<String, Integer> replacedBy = new HashMap<>();
+        Map<String, T> added = new LinkedHashMap<>();
+        Map<String, Integer> addedBy = new HashMap<>();
+        for (int s = 0; s < stageMembers.size(); s++) {
+            Set<String> kept = stageMembers.get(s).stream().map(key).collect(Collectors.toSet());
+            for (String name : originalIndices.keySet()) {
+                if (!kept.contains(name)) {
+                    throw new IllegalStateException("Stage " + names.get(s) + " removed " + kind + " " + name);
+                }
+            }
+            for (T member : stageMembers.get(s)) {
+                if (unchanged.contains(member)) {
+                    continue;
+                }
+                String name = key.apply(member);
+                Integer index = originalIndices.get(name);
+                if (index != null) {
+                    Integer previous = replacedBy.put(name, s);
+                    if (previous != null && !merged.get(index).equals(member)) {
+                        throw conflict("replace", kind, name, previous, s);
+                    }
+                    merged.set(index, member);
+                } else {
+                    Integer previous = addedBy.put(name, s);
+                    if (previous != null) {
+                        throw conflict("add", kind, name, previous, s);
+                    }
+                    added.put(name, member);
+                }
+            }
+        }
+        merged.addAll(added.values());
+        return merged;
+    }
+
+    private IllegalStateException conflict(String action, String kind, String name, int first, int second) {
+        return new IllegalStateException("Stages " + names.get(first) + " and " + names.get(second)
+                + " both " + action + " " + kind + " " + name);
+    }
+
+    private static String signature(MethodSpec method) {
+        return method.name + method.parameters.stream()
+                .map(p -> p.type.toString())
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    public static class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<Stage> stages = new ArrayList<>();
+
+        Builder() {
+        }
+
+        /**
+         * Add a stage, named in conflict messages
+         *
+         * @param name
+         * @param stage
+         * @return
+         */
+        public Builder withStage(String name, Stage stage) {
+            names.add(name);
+            stages.add(stage);
+            return this;
+        }
+
+        public Builder withGetters(String namingConvention) {
+            return withStage("getters", getters(namingConvention));
+        }
+
+        public Builder withSetters(String namingConvention) {
+            return withStage("setters", setters(namingConvention));
+        }
+
+        public Builder withEquals() {
+            return withStage("equals", spec((p, b) -> EqualsSpec.forType(p, b).build()));
+        }
+
+        public Builder withBuilder() {
+            return withStage("builder", spec((p, b) -> BuilderSpec.forType(p, b).build()));
+        }
+
+        public Builder withDeepCopy() {
+            return withStage("copy", spec((p, b) -> CopySpec.forInstances(p, b).build()));
+        }
+
+        public PipelineSpec build() {
+            return new PipelineSpec(names, stages);
+        }
+    }
+}
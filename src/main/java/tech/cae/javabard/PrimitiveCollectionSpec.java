@@ -0,0 +1,711 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate collections of primitives, to avoid boxing: growable lists (e.g.
+ * IntList) and open addressing hash maps with int or long keys (e.g.
+ * IntIntMap, LongObjectMap).
+ *
+ * Fields of a type declared as List of a boxed primitive, or Map from Integer
+ * or Long, can be rewritten to use them with {@link Builder#forType}.
+ *
+ * @author peter
+ */
+public class PrimitiveCollectionSpec {
+
+    private static final ClassName LIST = ClassName.get(List.class);
+    private static final ClassName ARRAY_LIST = ClassName.get(ArrayList.class);
+    private static final ClassName MAP = ClassName.get(Map.class);
+    private static final ClassName HASH_MAP = ClassName.get(HashMap.class);
+    private static final TypeVariableName V = TypeVariableName.get("V");
+
+    public static PrimitiveCollectionSpec.Builder builder(String packageName) {
+        return new Builder(packageName);
+    }
+
+    public static class Builder {
+
+        private final String packageName;
+        private final Map<String, TypeName[]> lists = new ConcurrentSkipListMap<>();
+        private final Map<String, TypeName[]> maps = new ConcurrentSkipListMap<>();
+
+        Builder(String packageName) {
+            this.packageName = packageName;
+        }
+
+        /**
+         * Generate a list of a primitive type
+         *
+         * @param element a primitive or boxed primitive type
+         * @return
+         */
+        public Builder withList(TypeName element) {
+            TypeName primitive = primitive(element);
+            lists.putIfAbsent(listName(primitive), new TypeName[]{primitive});
+            return this;
+        }
+
+        /**
+         * Generate a map from int or long keys
+         *
+         * @param key int or long, or their boxed types
+         * @param value a primitive or boxed primitive type, or any other type
+         * for a map with a generic value type
+         * @return
+         */
+        public Builder withMap(TypeName key, TypeName value) {
+            TypeName primitiveKey = primitive(key);
+            if (!TypeName.INT.equals(primitiveKey) && !TypeName.LONG.equals(primitiveKey)) {
+                throw new IllegalArgumentException("Map keys must be int or long, not " + key);
+            }
+            TypeName primitiveValue = value.isPrimitive() || value.isBoxedPrimitive() ? primitive(value) : TypeName.OBJECT;
+            maps.putIfAbsent(mapName(primitiveKey, primitiveValue), new TypeName[]{primitiveKey, primitiveValue});
+            return this;
+        }
+
+        public ClassName getListClassName(TypeName element) {
+            return ClassName.get(packageName, listName(primitive(element)));
+        }
+
+        /**
+         * The type of map to use for the given key and value types, which is
+         * parameterized for non-primitive values
+         *
+         * @param key
+         * @param value
+         * @return
+         */
+        public TypeName getMapTypeName(TypeName key, TypeName value) {
+            if (value.isPrimitive() || value.isBoxedPrimitive()) {
+                return ClassName.get(packageName, mapName(primitive(key), primitive(value)));
+            }
+            return ParameterizedTypeName.get(ClassName.get(packageName, mapName(primitive(key), TypeName.OBJECT)), value);
+        }
+
+        /**
+         * Rewrite the collection fields of a type, registering the collections
+         * it needs with this builder
+         *
+         * @param typeSpecBuilder
+         * @return
+         */
+        public FieldRewriter forType(TypeSpec.Builder typeSpecBuilder) {
+            return new FieldRewriter(this, typeSpecBuilder);
+        }
+
+        /**
+         * Generate every collection that has been registered, in name order
+         *
+         * @return
+         */
+        public List<TypeSpec.Builder> build() {
+            List<TypeSpec.Builder> types = new ArrayList<>();
+            lists.forEach((name, element) -> types.add(makeList(ClassName.get(packageName, name), element[0])));
+            maps.forEach((name, keyAndValue) -> types.add(makeMap(ClassName.get(packageName, name), keyAndValue[0], keyAndValue[1])));
+            return types;
+        }
+
+        TypeName rewrite(TypeName type) {
+            if (type instanceof ParameterizedTypeName) {
+                ParameterizedTypeName parameterized = (ParameterizedTypeName) type;
+                if ((LIST.equals(parameterized.rawType) || ARRAY_LIST.equals(parameterized.rawType))
+                        && parameterized.typeArguments.get(0).isBoxedPrimitive()) {
+                    withList(parameterized.typeArguments.get(0));
+                    return getListClassName(parameterized.typeArguments.get(0));
+                }
+                if ((MAP.equals(parameterized.rawType) || HASH_MAP.equals(parameterized.rawType))
+                        && (TypeName.INT.box().equals(parameterized.typeArguments.get(0))
+                        || TypeName.LONG.box().equals(parameterized.typeArguments.get(0)))) {
+                    withMap(parameterized.typeArguments.get(0), parameterized.typeArguments.get(1));
+                    return getMapTypeName(parameterized.typeArguments.get(0), parameterized.typeArguments.get(1));
+                }
+            }
+            return type;
+        }
+    }
+
+    /**
+     * Rewrites fields declared as List or ArrayList of a boxed primitive, and
+     * Map or HashMap from Integer or Long, to use primitive collections. Any
+     * initializer is replaced with a new empty collection, and the types of
+     * existing getters and setters of those fields (e.g. from GetterSpec and
+     * SetterSpec) are changed to match.
+     */
+    public static class FieldRewriter {
+
+        private final Builder collections;
+        private final TypeSpec.Builder typeSpecBuilder;
+        private String getterNamingConvention = "get$N";
+        private String setterNamingConvention = "set$N";
+
+        FieldRewriter(Builder collections, TypeSpec.Builder typeSpecBuilder) {
+            this.collections = collections;
+            this.typeSpecBuilder = typeSpecBuilder;
+        }
+
+        public FieldRewriter withGetterNamingConvention(String n) {
+            this.getterNamingConvention = n;
+            return this;
+        }
+
+        public FieldRewriter withSetterNamingConvention(String n) {
+            this.setterNamingConvention = n;
+            return this;
+        }
+
+        public TypeSpec.Builder build() {
+            for (int i = 0; i < typeSpecBuilder.fieldSpecs.size(); i++) {
+                FieldSpec field = typeSpecBuilder.fieldSpecs.get(i);
+                TypeName rewritten = collections.rewrite(field.type);
+                if (!rewritten.equals(field.type)) {
+                    FieldSpec.Builder fsb = FieldSpec.builder(rewritten, field.name)
+                            .addJavadoc(field.javadoc)
+                            .addAnnotations(field.annotations)
+                            .addModifiers(field.modifiers.toArray(new Modifier[0]));
+                    if (!field.initializer.isEmpty()) {
+                        if (rewritten instanceof ParameterizedTypeName) {
+                            fsb.initializer("new $T<>()", ((ParameterizedTypeName) rewritten).rawType);
+                        } else {
+                            fsb.initializer("new $T()", rewritten);
+                        }
+                    }
+                    typeSpecBuilder.fieldSpecs.set(i, fsb.build());
+                    rewriteAccessors(field, rewritten);
+                }
+            }
+            return typeSpecBuilder;
+        }
+
+        private void rewriteAccessors(FieldSpec field, TypeName rewritten) {
+            String getterName = Names.accessorName(getterNamingConvention, field.name);
+            String setterName = Names.accessorName(setterNamingConvention, field.name);
+            for (int i = 0; i < typeSpecBuilder.methodSpecs.size(); i++) {
+                MethodSpec method = typeSpecBuilder.methodSpecs.get(i);
+                if (method.name.equals(getterName) && method.parameters.isEmpty() && field.type.equals(method.returnType)) {
+                    typeSpecBuilder.methodSpecs.set(i, method.toBuilder().returns(rewritten).build());
+                } else if (method.name.equals(setterName) && method.parameters.size() == 1 && field.type.equals(method.parameters.get(0).type)) {
+                    MethodSpec.Builder msb = method.toBuilder();
+                    ParameterSpec parameter = method.parameters.get(0);
+                    msb.parameters.set(0, ParameterSpec.builder(rewritten, parameter.name)
+                            .addAnnotations(parameter.annotations)
+                            .addModifiers(parameter.modifiers)
+                            .build());
+                    typeSpecBuilder.methodSpecs.set(i, msb.build());
+                }
+            }
+        }
+    }
+
+    static TypeName primitive(TypeName type) {
+        if (type.isPrimitive()) {
+            return type;
+        }
+        if (type.isBoxedPrimitive()) {
+            return type.unbox();
+        }
+        throw new IllegalArgumentException(type + " is not a primitive type");
+    }
+
+    private static String listName(TypeName element) {
+        return Names.prefix(element) + "List";
+    }
+
+    private static String mapName(TypeName key, TypeName value) {
+        return Names.prefix(key) + Names.prefix(value) + "Map";
+    }
+
+    private static CodeBlock equal(TypeName type, String a, String b) {
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("$T.doubleToLongBits($L) == $T.doubleToLongBits($L)", Double.class, a, Double.class, b);
+        } else if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$T.floatToIntBits($L) == $T.floatToIntBits($L)", Float.class, a, Float.class, b);
+        } else if (type.isPrimitive()) {
+            return CodeBlock.of("$L == $L", a, b);
+        }
+        return CodeBlock.of("$T.equals($L, $L)", Objects.class, a, b);
+    }
+
+    private static CodeBlock hash(TypeName type, String a) {
+        if (type.isPrimitive()) {
+            return CodeBlock.of("$T.hashCode($L)", type.box(), a);
+        }
+        return CodeBlock.of("$T.hashCode($L)", Objects.class, a);
+    }
+
+    static TypeSpec.Builder makeList(ClassName self, TypeName element) {
+        ArrayTypeName array = ArrayTypeName.of(element);
+        TypeSpec.Builder list = TypeSpec.classBuilder(self)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Growable list of $L values, stored without boxing\n", element)
+                .addField(FieldSpec.builder(array, "EMPTY", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("{}")
+                        .build())
+                .addField(array, "elements", Modifier.PRIVATE)
+                .addField(TypeName.INT, "size", Modifier.PRIVATE);
+        list.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this.elements = EMPTY")
+                .build());
+        list.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "initialCapacity")
+                .addStatement("this.elements = initialCapacity == 0 ? EMPTY : new $T[initialCapacity]", element)
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("of")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(array, "values")
+                .varargs()
+                .returns(self)
+                .addStatement("$T list = new $T(values.length)", self, self)
+                .addStatement("$T.arraycopy(values, 0, list.elements, 0, values.length)", System.class)
+                .addStatement("list.size = values.length")
+                .addStatement("return list")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("size")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("return size")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("isEmpty")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return size == 0")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("get")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "index")
+                .returns(element)
+                .addStatement("checkIndex(index)")
+                .addStatement("return elements[index]")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("set")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "index")
+                .addParameter(element, "value")
+                .returns(element)
+                .addStatement("checkIndex(index)")
+                .addStatement("$T previous = elements[index]", element)
+                .addStatement("elements[index] = value")
+                .addStatement("return previous")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("add")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(element, "value")
+                .beginControlFlow("if (size == elements.length)")
+                .addStatement("grow(size + 1)")
+                .endControlFlow()
+                .addStatement("elements[size++] = value")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("addAll")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(self, "other")
+                .addStatement("ensureCapacity(size + other.size)")
+                .addStatement("$T.arraycopy(other.elements, 0, elements, size, other.size)", System.class)
+                .addStatement("size += other.size")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("removeAt")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "index")
+                .returns(element)
+                .addStatement("checkIndex(index)")
+                .addStatement("$T previous = elements[index]", element)
+                .addStatement("$T.arraycopy(elements, index + 1, elements, index, size - index - 1)", System.class)
+                .addStatement("size--")
+                .addStatement("return previous")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("indexOf")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(element, "value")
+                .returns(TypeName.INT)
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .beginControlFlow("if ($L)", equal(element, "elements[i]", "value"))
+                .addStatement("return i")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return -1")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("contains")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(element, "value")
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return indexOf(value) >= 0")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("clear")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("size = 0")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("ensureCapacity")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "capacity")
+                .beginControlFlow("if (capacity > elements.length)")
+                .addStatement("grow(capacity)")
+                .endControlFlow()
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("trimToSize")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("elements = size == 0 ? EMPTY : $T.copyOf(elements, size)", Arrays.class)
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("toArray")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(array)
+                .addStatement("return $T.copyOf(elements, size)", Arrays.class)
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("grow")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "minCapacity")
+                .addStatement("elements = $T.copyOf(elements, $T.max(minCapacity, elements.length + (elements.length >> 1) + 1))", Arrays.class, Math.class)
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("checkIndex")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "index")
+                .beginControlFlow("if (index < 0 || index >= size)")
+                .addStatement("throw new $T(\"Index: \" + index + \", Size: \" + size)", IndexOutOfBoundsException.class)
+                .endControlFlow()
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("hashCode")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(TypeName.INT)
+                .addStatement("int hash = 1")
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .addStatement("hash = 31 * hash + $L", hash(element, "elements[i]"))
+                .endControlFlow()
+                .addStatement("return hash")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("equals")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameter(TypeName.OBJECT, "obj")
+                .returns(TypeName.BOOLEAN)
+                .beginControlFlow("if (this == obj)")
+                .addStatement("return true")
+                .endControlFlow()
+                .beginControlFlow("if (!(obj instanceof $T))", self)
+                .addStatement("return false")
+                .endControlFlow()
+                .addStatement("$T other = ($T) obj", self, self)
+                .beginControlFlow("if (size != other.size)")
+                .addStatement("return false")
+                .endControlFlow()
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .beginControlFlow("if (!($L))", equal(element, "elements[i]", "other.elements[i]"))
+                .addStatement("return false")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return true")
+                .build());
+        list.addMethod(MethodSpec.methodBuilder("toString")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(String.class)
+                .addStatement("$T sb = new $T(\"[\")", StringBuilder.class, StringBuilder.class)
+                .beginControlFlow("for (int i = 0; i < size; i++)")
+                .beginControlFlow("if (i > 0)")
+                .addStatement("sb.append(\", \")")
+                .endControlFlow()
+                .addStatement("sb.append(elements[i])")
+                .endControlFlow()
+                .addStatement("return sb.append(']').toString()")
+                .build());
+        return list;
+    }
+
+    static TypeSpec.Builder makeMap(ClassName name, TypeName key, TypeName value) {
+        boolean generic = TypeName.OBJECT.equals(value);
+        TypeName self = generic ? ParameterizedTypeName.get(name, WildcardTypeName.subtypeOf(Object.class)) : name;
+        TypeName valueType = generic ? V : value;
+        ClassName consumer = name.nestedClass("EntryConsumer");
+        TypeName consumerType = generic ? ParameterizedTypeName.get(consumer, WildcardTypeName.supertypeOf(V)) : consumer;
+        TypeSpec.Builder map = TypeSpec.classBuilder(name)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Hash map from $L keys to $L values, using open addressing with linear probing\n", key, generic ? "object" : value)
+                .addField(ArrayTypeName.of(key), "keys", Modifier.PRIVATE)
+                .addField(ArrayTypeName.of(value), "values", Modifier.PRIVATE)
+                .addField(ArrayTypeName.of(TypeName.BOOLEAN), "used", Modifier.PRIVATE)
+                .addField(TypeName.INT, "size", Modifier.PRIVATE)
+                .addField(TypeName.INT, "mask", Modifier.PRIVATE)
+                .addField(TypeName.INT, "resizeAt", Modifier.PRIVATE);
+        TypeSpec.Builder consumerBuilder = TypeSpec.interfaceBuilder("EntryConsumer")
+                .addModifiers(Modifier.PUBLIC)
+                .addMethod(MethodSpec.methodBuilder("accept")
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                        .addParameter(key, "key")
+                        .addParameter(valueType, "value")
+                        .build());
+        if (generic) {
+            map.addTypeVariable(V);
+            consumerBuilder.addTypeVariable(V);
+            map.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+        }
+        map.addType(consumerBuilder.build());
+        map.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this(16)")
+                .build());
+        map.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "expectedSize")
+                .addStatement("int capacity = 2")
+                .beginControlFlow("while (capacity * 3 / 4 < expectedSize)")
+                .addStatement("capacity <<= 1")
+                .endControlFlow()
+                .addStatement("allocate(capacity)")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("allocate")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "capacity")
+                .addStatement("keys = new $T[capacity]", key)
+                .addStatement("values = new $T[capacity]", value)
+                .addStatement("used = new boolean[capacity]")
+                .addStatement("mask = capacity - 1")
+                .addStatement("resizeAt = capacity * 3 / 4")
+                .build());
+        MethodSpec.Builder hash = MethodSpec.methodBuilder("hash")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(key, "key")
+                .returns(TypeName.INT);
+        if (TypeName.LONG.equals(key)) {
+            hash.addStatement("int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9");
+        } else {
+            hash.addStatement("int h = key * 0x9E3779B9");
+        }
+        map.addMethod(hash.addStatement("return h ^ (h >>> 16)").build());
+        map.addMethod(MethodSpec.methodBuilder("indexOf")
+                .addJavadoc("@return the slot holding the key, or the complement of the free slot where it would go\n")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(key, "key")
+                .returns(TypeName.INT)
+                .addStatement("int i = hash(key) & mask")
+                .beginControlFlow("while (used[i])")
+                .beginControlFlow("if (keys[i] == key)")
+                .addStatement("return i")
+                .endControlFlow()
+                .addStatement("i = (i + 1) & mask")
+                .endControlFlow()
+                .addStatement("return ~i")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("size")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("return size")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("isEmpty")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return size == 0")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("containsKey")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(key, "key")
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return indexOf(key) >= 0")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("get")
+                .addJavadoc("@return the value for the key, or $L if there is none\n", Names.defaultValue(value))
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(key, "key")
+                .returns(valueType)
+                .addStatement("return getOrDefault(key, $L)", Names.defaultValue(value))
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("getOrDefault")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(key, "key")
+                .addParameter(valueType, "defaultValue")
+                .returns(valueType)
+                .addStatement("int i = indexOf(key)")
+                .addStatement(generic ? "return i >= 0 ? (V) values[i] : defaultValue" : "return i >= 0 ? values[i] : defaultValue")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("put")
+                .addJavadoc("@return the previous value for the key, or $L if there was none\n", Names.defaultValue(value))
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(key, "key")
+                .addParameter(valueType, "value")
+                .returns(valueType)
+                .addStatement("int i = indexOf(key)")
+                .beginControlFlow("if (i >= 0)")
+                .addStatement(generic ? "V previous = (V) values[i]" : "$T previous = values[i]", value)
+                .addStatement("values[i] = value")
+                .addStatement("return previous")
+                .endControlFlow()
+                .addStatement("i = ~i")
+                .addStatement("keys[i] = key")
+                .addStatement("values[i] = value")
+                .addStatement("used[i] = true")
+                .beginControlFlow("if (++size > resizeAt)")
+                .addStatement("rehash(keys.length << 1)")
+                .endControlFlow()
+                .addStatement("return $L", Names.defaultValue(value))
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("remove")
+                .addJavadoc("@return the removed value, or $L if there was none\n", Names.defaultValue(value))
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(key, "key")
+                .returns(valueType)
+                .addStatement("int i = indexOf(key)")
+                .beginControlFlow("if (i < 0)")
+                .addStatement("return $L", Names.defaultValue(value))
+                .endControlFlow()
+                .addStatement(generic ? "V previous = (V) values[i]" : "$T previous = values[i]", value)
+                .addStatement("shiftDown(i)")
+                .addStatement("size--")
+                .addStatement("return previous")
+                .build());
+        MethodSpec.Builder shiftDown = MethodSpec.methodBuilder("shiftDown")
+                .addJavadoc("Backward shift deletion, so that no tombstones are needed\n")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "gap")
+                .addStatement("int i = gap")
+                .beginControlFlow("while (true)")
+                .addStatement("i = (i + 1) & mask")
+                .beginControlFlow("if (!used[i])")
+                .addStatement("break")
+                .endControlFlow()
+                .addStatement("int ideal = hash(keys[i]) & mask")
+                .beginControlFlow("if (((i - ideal) & mask) >= ((i - gap) & mask))")
+                .addStatement("keys[gap] = keys[i]")
+                .addStatement("values[gap] = values[i]")
+                .addStatement("gap = i")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("used[gap] = false");
+        if (generic) {
+            shiftDown.addStatement("values[gap] = null");
+        }
+        map.addMethod(shiftDown.build());
+        MethodSpec.Builder clear = MethodSpec.methodBuilder("clear")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("$T.fill(used, false)", Arrays.class);
+        if (generic) {
+            clear.addStatement("$T.fill(values, null)", Arrays.class);
+        }
+        map.addMethod(clear.addStatement("size = 0").build());
+        map.addMethod(MethodSpec.methodBuilder("rehash")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "capacity")
+                .addStatement("$T oldKeys = keys", ArrayTypeName.of(key))
+                .addStatement("$T oldValues = values", ArrayTypeName.of(value))
+                .addStatement("boolean[] oldUsed = used")
+                .addStatement("allocate(capacity)")
+                .beginControlFlow("for (int j = 0; j < oldKeys.length; j++)")
+                .beginControlFlow("if (oldUsed[j])")
+                .addStatement("int i = hash(oldKeys[j]) & mask")
+                .beginControlFlow("while (used[i])")
+                .addStatement("i = (i + 1) & mask")
+                .endControlFlow()
+                .addStatement("keys[i] = oldKeys[j]")
+                .addStatement("values[i] = oldValues[j]")
+                .addStatement("used[i] = true")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("keys")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ArrayTypeName.of(key))
+                .addStatement("$T result = new $T[size]", ArrayTypeName.of(key), key)
+                .addStatement("int n = 0")
+                .beginControlFlow("for (int i = 0; i < keys.length; i++)")
+                .beginControlFlow("if (used[i])")
+                .addStatement("result[n++] = keys[i]")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return result")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("forEach")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(consumerType, "consumer")
+                .beginControlFlow("for (int i = 0; i < keys.length; i++)")
+                .beginControlFlow("if (used[i])")
+                .addStatement(generic ? "consumer.accept(keys[i], (V) values[i])" : "consumer.accept(keys[i], values[i])")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("hashCode")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(TypeName.INT)
+                .addStatement("int hash = 0")
+                .beginControlFlow("for (int i = 0; i < keys.length; i++)")
+                .beginControlFlow("if (used[i])")
+                .addStatement("hash += $L ^ $L", hash(key, "keys[i]"), hash(value, "values[i]"))
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return hash")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("equals")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameter(TypeName.OBJECT, "obj")
+                .returns(TypeName.BOOLEAN)
+                .beginControlFlow("if (this == obj)")
+                .addStatement("return true")
+                .endControlFlow()
+                .beginControlFlow("if (!(obj instanceof $T))", name)
+                .addStatement("return false")
+                .endControlFlow()
+                .addStatement("$T other = ($T) obj", self, self)
+                .beginControlFlow("if (size != other.size)")
+                .addStatement("return false")
+                .endControlFlow()
+                .beginControlFlow("for (int i = 0; i < keys.length; i++)")
+                .beginControlFlow("if (used[i])")
+                .addStatement("int j = other.indexOf(keys[i])")
+                .beginControlFlow("if (j < 0 || !($L))", equal(value, "values[i]", "other.values[j]"))
+                .addStatement("return false")
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return true")
+                .build());
+        map.addMethod(MethodSpec.methodBuilder("toString")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(String.class)
+                .addStatement("$T sb = new $T(\"{\")", StringBuilder.class, StringBuilder.class)
+                .beginControlFlow("for (int i = 0; i < keys.length; i++)")
+                .beginControlFlow("if (used[i])")
+                .beginControlFlow("if (sb.length() > 1)")
+                .addStatement("sb.append(\", \")")
+                .endControlFlow()
+                .addStatement("sb.append(keys[i]).append('=').append(values[i])")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return sb.append('}').toString()")
+                .build());
+        return map;
+    }
+}
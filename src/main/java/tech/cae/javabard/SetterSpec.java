@@ -15,10 +15,30 @@
  */
 package tech.cae.javabard;
 
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
 import javax.lang.model.element.Modifier;
 
 /**
@@ -27,6 +47,35 @@ import javax.lang.model.element.Modifier;
  */
 public class SetterSpec {
 
+    static final String DIRTY_MASK = "dirtyMask";
+    static final String DIRTY_FIELDS = "DIRTY_FIELDS";
+    static final String DIRTY_FIELD = "DirtyField";
+    static final String DIRTY_FIELD_VISITOR = "DirtyFieldVisitor";
+
+    /**
+     * Whether SetterSpec.Builder generates a setter for a field, unless it is
+     * a lazy field
+     *
+     * @param field
+     * @return
+     */
+    static boolean hasSetter(FieldSpec field) {
+        return !field.hasModifier(Modifier.FINAL) && !EqualsSpec.isHashCodeCache(field) && !isDirtyTracking(field);
+    }
+
+    /**
+     * Whether a field is one of those added by withDirtyTracking, which other
+     * specs must not treat as part of the state of the class
+     *
+     * @param field
+     * @return
+     */
+    static boolean isDirtyTracking(FieldSpec field) {
+        return field.hasModifier(Modifier.STATIC)
+                ? DIRTY_FIELDS.equals(field.name)
+                : DIRTY_MASK.equals(field.name) && field.hasModifier(Modifier.TRANSIENT);
+    }
+
     /**
      *
      * @param field
@@ -44,11 +93,20 @@ public class SetterSpec {
      * @return
      */
     public static MethodSpec.Builder forField(FieldSpec field, String namingConvention, ParameterSpec returnObject) {
-        MethodSpec.Builder builder = MethodSpec.methodBuilder(makeName(namingConvention, field.name))
+        return forField(field, namingConvention, returnObject, AccessMode.PLAIN, CodeBlock.builder().build());
+    }
+
+    static MethodSpec.Builder forField(FieldSpec field, String namingConvention, ParameterSpec returnObject, AccessMode accessMode, CodeBlock afterAssignment) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(Names.accessorName(namingConvention, field.name))
                 .addJavadoc("Set " + field.javadoc + "\n@param $N_ " + field.javadoc + "\n", field.name)
                 .addParameter(field.type, field.name + "_")
-                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
-                .addStatement("$N = $N_", field.name, field.name);
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+        if (accessMode == AccessMode.RELEASE) {
+            builder.addStatement("$N.lazySet(this, $N_)", AccessMode.updaterName(field.name), field.name);
+        } else {
+            builder.addStatement("$N = $N_", field.name, field.name);
+        }
+        builder.addCode(afterAssignment);
         if (returnObject != null) {
             builder.returns(returnObject.type)
                     .addStatement("return $N", returnObject.name);
@@ -59,15 +117,79 @@ public class SetterSpec {
         return builder;
     }
 
-    private static String makeName(String namingConvention, String name) {
-        if (namingConvention.indexOf("$N") > 0) {
-            return namingConvention.replace("$N", toCamelCase(name));
+    /**
+     * Methods updating a volatile field atomically through the static field
+     * updater made by AccessMode.ATOMIC: lazySetX, compareAndSetX, getAndSetX
+     * and getAndUpdateX
+     *
+     * @param field
+     * @param afterAssignment run after each successful update
+     * @return
+     */
+    static List<MethodSpec> atomicForField(FieldSpec field, CodeBlock afterAssignment) {
+        String updater = AccessMode.updaterName(field.name);
+        TypeName operator;
+        String apply;
+        if (TypeName.INT.equals(field.type)) {
+            operator = ClassName.get(IntUnaryOperator.class);
+            apply = "applyAsInt";
+        } else if (TypeName.LONG.equals(field.type)) {
+            operator = ClassName.get(LongUnaryOperator.class);
+            apply = "applyAsLong";
+        } else {
+            operator = ParameterizedTypeName.get(ClassName.get(UnaryOperator.class), field.type);
+            apply = "apply";
         }
-        return namingConvention.replace("$N", name);
-    }
-
-    private static String toCamelCase(String a) {
-        return new String(new char[]{Character.toUpperCase(a.charAt(0))}) + a.substring(1);
+        List<MethodSpec> methods = new ArrayList<>();
+        methods.add(MethodSpec.methodBuilder(Names.accessorName("lazySet$N", field.name))
+                .addJavadoc("Set " + field.javadoc + " with a release store, which may not be seen by other threads immediately\n"
+                        + "@param $N_ " + field.javadoc + "\n", field.name)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addParameter(field.type, field.name + "_")
+                .addStatement("$N.lazySet(this, $N_)", updater, field.name)
+                .addCode(afterAssignment)
+                .build());
+        methods.add(MethodSpec.methodBuilder(Names.accessorName("compareAndSet$N", field.name))
+                .addJavadoc("Set " + field.javadoc + " if it is the expected value (==)\n"
+                        + "@param expected\n@param $N_ " + field.javadoc + "\n@return true if set\n", field.name)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addParameter(field.type, "expected")
+                .addParameter(field.type, field.name + "_")
+                .returns(TypeName.BOOLEAN)
+                .beginControlFlow("if ($N.compareAndSet(this, expected, $N_))", updater, field.name)
+                .addCode(afterAssignment)
+                .addStatement("return true")
+                .endControlFlow()
+                .addStatement("return false")
+                .build());
+        MethodSpec.Builder getAndSet = MethodSpec.methodBuilder(Names.accessorName("getAndSet$N", field.name))
+                .addJavadoc("Set " + field.javadoc + "\n@param $N_ " + field.javadoc + "\n@return the previous value\n", field.name)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addParameter(field.type, field.name + "_")
+                .returns(field.type);
+        if (!AccessMode.erasure(field.type, Collections.emptyList()).equals(field.type)) {
+            getAndSet.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                    .addStatement("$T previous = ($T) $N.getAndSet(this, $N_)", field.type, field.type, updater, field.name);
+        } else {
+            getAndSet.addStatement("$T previous = $N.getAndSet(this, $N_)", field.type, updater, field.name);
+        }
+        methods.add(getAndSet.addCode(afterAssignment)
+                .addStatement("return previous")
+                .build());
+        methods.add(MethodSpec.methodBuilder(Names.accessorName("getAndUpdate$N", field.name))
+                .addJavadoc("Update " + field.javadoc + " atomically, retrying if another thread changes it first\n"
+                        + "@param operator computes the new value, and must be free of side effects\n@return the previous value\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addParameter(operator, "operator")
+                .returns(field.type)
+                .addStatement("$T previous", field.type)
+                .beginControlFlow("do")
+                .addStatement("previous = this.$N", field.name)
+                .endControlFlow("while (!$N.compareAndSet(this, previous, operator.$N(previous)))", updater, apply)
+                .addCode(afterAssignment)
+                .addStatement("return previous")
+                .build());
+        return methods;
     }
 
     /**
@@ -88,10 +210,14 @@ public class SetterSpec {
         private final TypeSpec typeSpec;
         private String namingConvention = "set$N";
         private ParameterSpec returnObject = null;
+        private final Set<String> invalidatedFields = new LinkedHashSet<>();
+        private AccessMode accessMode = AccessMode.PLAIN;
+        private final Map<String, AccessMode> fieldAccessModes = new HashMap<>();
+        private boolean dirtyTracking = false;
 
         Builder(TypeSpec.Builder typeSpecBuilder) {
             this.typeSpecBuilder = typeSpecBuilder;
-            this.typeSpec = typeSpecBuilder.build();
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
         }
 
         public Builder withNamingConvention(String n) {
@@ -104,13 +230,206 @@ public class SetterSpec {
             return this;
         }
 
+        /**
+         * Call the invalidation hooks of lazy fields, generated by
+         * GetterSpec.Builder.withInvalidationHooks, from every setter. The
+         * lazy fields themselves get no setters.
+         *
+         * @param lazyFieldNames
+         * @return
+         */
+        public Builder withInvalidation(String... lazyFieldNames) {
+            this.invalidatedFields.addAll(Arrays.asList(lazyFieldNames));
+            return this;
+        }
+
+        /**
+         * The access mode of every non-final instance field
+         *
+         * @param accessMode
+         * @return
+         */
+        public Builder withAccessMode(AccessMode accessMode) {
+            this.accessMode = accessMode;
+            return this;
+        }
+
+        /**
+         * The access mode of one field, which must be a non-final instance
+         * field
+         *
+         * @param fieldName
+         * @param accessMode
+         * @return
+         */
+        public Builder withAccessMode(String fieldName, AccessMode accessMode) {
+            this.fieldAccessModes.put(fieldName, accessMode);
+            return this;
+        }
+
+        /**
+         * Record which instance fields have been set since the last call to
+         * clearDirty(), in a transient bit mask: an int, a long, or a BitSet
+         * created on first use for more than 64 fields. The other specs leave
+         * the mask out of the state of the class, and it is not serialized.
+         * Generates a nested DirtyField enum, isDirty(), isDirty(DirtyField),
+         * dirtyFields(), clearDirty(), and a DirtyFieldVisitor interface with
+         * a method for each field, called by visitDirty() for the changed
+         * fields only.
+         *
+         * The mask is not updated atomically, so concurrent setters of one
+         * instance need external synchronization.
+         *
+         * @return
+         */
+        public Builder withDirtyTracking() {
+            this.dirtyTracking = true;
+            return this;
+        }
+
         public TypeSpec.Builder build() {
+            CodeBlock.Builder invalidation = CodeBlock.builder();
+            Set<String> lazyFields = new HashSet<>();
+            invalidatedFields.forEach((name) -> {
+                invalidation.addStatement("$N()", GetterSpec.invalidatorName(name));
+                lazyFields.add(name);
+                lazyFields.add(GetterSpec.computedFlagName(name));
+            });
+            List<FieldSpec> tracked = new ArrayList<>();
             typeSpec.fieldSpecs.forEach((field) -> {
-                if (!field.hasModifier(Modifier.FINAL)) {
-                    typeSpecBuilder.addMethod(forField(field, namingConvention, returnObject).build());
+                if (hasSetter(field) && !field.hasModifier(Modifier.STATIC) && !lazyFields.contains(field.name)) {
+                    tracked.add(field);
+                }
+            });
+            if (dirtyTracking) {
+                addDirtyTracking(tracked);
+            }
+            typeSpec.fieldSpecs.forEach((field) -> {
+                if (hasSetter(field) && !lazyFields.contains(field.name)) {
+                    AccessMode mode = fieldAccessModes.getOrDefault(field.name,
+                            field.hasModifier(Modifier.STATIC) ? AccessMode.PLAIN : accessMode);
+                    CodeBlock.Builder afterAssignmentBuilder = CodeBlock.builder();
+                    if (!field.hasModifier(Modifier.STATIC)) {
+                        afterAssignmentBuilder.add(invalidation.build());
+                        if (dirtyTracking) {
+                            afterAssignmentBuilder.add(markDirty(tracked.indexOf(field), tracked.size()));
+                        }
+                    }
+                    CodeBlock afterAssignment = afterAssignmentBuilder.build();
+                    if (mode.isVolatile()) {
+                        AccessMode.makeVolatile(typeSpecBuilder, field.name);
+                    }
+                    if (mode.needsUpdater()) {
+                        typeSpecBuilder.addField(AccessMode.makeUpdater(typeSpec, field));
+                    }
+                    typeSpecBuilder.addMethod(forField(field, namingConvention, returnObject, mode, afterAssignment).build());
+                    if (mode == AccessMode.ATOMIC) {
+                        typeSpecBuilder.addMethods(atomicForField(field, afterAssignment));
+                    }
                 }
             });
             return typeSpecBuilder;
         }
+
+        private void addDirtyTracking(List<FieldSpec> tracked) {
+            if (!typeSpec.typeVariables.isEmpty()) {
+                throw new IllegalArgumentException("Cannot track dirty fields of generic type " + typeSpec.name);
+            }
+            int count = tracked.size();
+            ClassName dirtyField = ClassName.get("", DIRTY_FIELD);
+            ClassName visitor = ClassName.get("", DIRTY_FIELD_VISITOR);
+            TypeSpec.Builder dirtyFieldEnum = TypeSpec.enumBuilder(DIRTY_FIELD)
+                    .addModifiers(Modifier.PUBLIC);
+            TypeSpec.Builder visitorInterface = TypeSpec.interfaceBuilder(DIRTY_FIELD_VISITOR)
+                    .addModifiers(Modifier.PUBLIC);
+            MethodSpec.Builder visitDirty = MethodSpec.methodBuilder("visitDirty")
+                    .addJavadoc("Visit the fields set since the last call to clearDirty()\n@param visitor\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(visitor, "visitor");
+            for (int i = 0; i < count; i++) {
+                FieldSpec field = tracked.get(i);
+                dirtyFieldEnum.addEnumConstant(Names.constantName(field.name));
+                String visitName = Names.accessorName("visit$N", field.name);
+                visitorInterface.addMethod(MethodSpec.methodBuilder(visitName)
+                        .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                        .addParameter(field.type, "value")
+                        .build());
+                visitDirty.beginControlFlow("if ($L)", isBitSet(CodeBlock.of("$L", i), count))
+                        .addStatement("visitor.$N(this.$N)", visitName, field.name)
+                        .endControlFlow();
+            }
+            typeSpecBuilder.addType(dirtyFieldEnum.build());
+            typeSpecBuilder.addType(visitorInterface.build());
+            TypeName dirtyFieldSet = ParameterizedTypeName.get(ClassName.get(EnumSet.class), dirtyField);
+            MethodSpec.Builder dirtyFields = MethodSpec.methodBuilder("dirtyFields")
+                    .addJavadoc("@return the fields set since the last call to clearDirty()\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(dirtyFieldSet)
+                    .addStatement("$T fields = $T.noneOf($T.class)", dirtyFieldSet, EnumSet.class, dirtyField);
+            MethodSpec.Builder clearDirty = MethodSpec.methodBuilder("clearDirty")
+                    .addJavadoc("Mark every field as unchanged\n")
+                    .addModifiers(Modifier.PUBLIC);
+            MethodSpec.Builder anyDirty = MethodSpec.methodBuilder("isDirty")
+                    .addJavadoc("@return true if any field has been set since the last call to clearDirty()\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN);
+            if (count > Long.SIZE) {
+                // Created on first use, so that it is also there after deserialization
+                typeSpecBuilder.addField(BitSet.class, DIRTY_MASK, Modifier.PRIVATE, Modifier.TRANSIENT);
+                typeSpecBuilder.addMethod(MethodSpec.methodBuilder(DIRTY_MASK)
+                        .addModifiers(Modifier.PRIVATE)
+                        .returns(BitSet.class)
+                        .beginControlFlow("if (this.$N == null)", DIRTY_MASK)
+                        .addStatement("this.$N = new $T($L)", DIRTY_MASK, BitSet.class, count)
+                        .endControlFlow()
+                        .addStatement("return this.$N", DIRTY_MASK)
+                        .build());
+                dirtyFields.beginControlFlow("if (this.$N != null)", DIRTY_MASK)
+                        .beginControlFlow("for (int i = this.$N.nextSetBit(0); i >= 0; i = this.$N.nextSetBit(i + 1))", DIRTY_MASK, DIRTY_MASK)
+                        .addStatement("fields.add($N[i])", DIRTY_FIELDS)
+                        .endControlFlow()
+                        .endControlFlow();
+                clearDirty.beginControlFlow("if (this.$N != null)", DIRTY_MASK)
+                        .addStatement("this.$N.clear()", DIRTY_MASK)
+                        .endControlFlow();
+                anyDirty.addStatement("return this.$N != null && !this.$N.isEmpty()", DIRTY_MASK, DIRTY_MASK);
+            } else {
+                boolean isLong = count > Integer.SIZE;
+                typeSpecBuilder.addField(isLong ? TypeName.LONG : TypeName.INT, DIRTY_MASK, Modifier.PRIVATE, Modifier.TRANSIENT);
+                dirtyFields.beginControlFlow("for ($T mask = this.$N; mask != 0; mask &= mask - 1)", isLong ? TypeName.LONG : TypeName.INT, DIRTY_MASK)
+                        .addStatement("fields.add($N[$T.numberOfTrailingZeros(mask)])", DIRTY_FIELDS, isLong ? Long.class : Integer.class)
+                        .endControlFlow();
+                clearDirty.addStatement("this.$N = 0", DIRTY_MASK);
+                anyDirty.addStatement("return this.$N != 0", DIRTY_MASK);
+            }
+            typeSpecBuilder.addField(FieldSpec.builder(ArrayTypeName.of(dirtyField), DIRTY_FIELDS, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.values()", dirtyField)
+                    .build());
+            typeSpecBuilder.addMethod(anyDirty.build());
+            typeSpecBuilder.addMethod(MethodSpec.methodBuilder("isDirty")
+                    .addJavadoc("@param field\n@return true if the field has been set since the last call to clearDirty()\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(dirtyField, "field")
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return $L", isBitSet(CodeBlock.of("field.ordinal()"), count))
+                    .build());
+            typeSpecBuilder.addMethod(dirtyFields.addStatement("return fields").build());
+            typeSpecBuilder.addMethod(clearDirty.build());
+            typeSpecBuilder.addMethod(visitDirty.build());
+        }
+    }
+
+    private static CodeBlock markDirty(int index, int count) {
+        if (count > Long.SIZE) {
+            return CodeBlock.builder().addStatement("$N().set($L)", DIRTY_MASK, index).build();
+        }
+        return CodeBlock.builder().addStatement("this.$N |= $L << $L", DIRTY_MASK, count > Integer.SIZE ? "1L" : "1", index).build();
+    }
+
+    private static CodeBlock isBitSet(CodeBlock index, int count) {
+        if (count > Long.SIZE) {
+            return CodeBlock.of("(this.$N != null && this.$N.get($L))", DIRTY_MASK, DIRTY_MASK, index);
+        }
+        return CodeBlock.of("(this.$N & $L << $L) != 0", DIRTY_MASK, count > Integer.SIZE ? "1L" : "1", index);
     }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.TypeSpec;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shared cache of built TypeSpecs, so that the specs applied to a type do not
+ * each rebuild it.
+ *
+ * A snapshot is reused while every member of the builder's public member
+ * lists (fields, methods, types, annotations, modifiers, superinterfaces,
+ * type variables, enum constants, originating elements and always qualified
+ * names) is the same object, in the same place, as when it was built.
+ * javapoet does not expose the javadoc, superclass or initializer and static
+ * blocks of a builder, so changes to those are not seen: specs that depend on
+ * them build the type directly instead: EqualsSpec (the superclass), CopySpec
+ * (all four), BatchSpec and PipelineSpec (which copy the whole type). Other
+ * callers that change them must discard the snapshot with
+ * {@link #invalidate(TypeSpec.Builder)}.
+ *
+ * Builders are spread over independently locked stripes, and no lock is held
+ * while a type is built, so types may be snapshotted in parallel.
+ *
+ * @author peter
+ */
+public class TypeSpecSnapshot {
+
+    private static final int STRIPES = 16;
+    private static final Map<TypeSpec.Builder, Snapshot>[] SNAPSHOTS = newStripes();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<TypeSpec.Builder, Snapshot>[] newStripes() {
+        Map<TypeSpec.Builder, Snapshot>[] stripes = new Map[STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new WeakHashMap<>();
+        }
+        return stripes;
+    }
+
+    private static Map<TypeSpec.Builder, Snapshot> stripe(TypeSpec.Builder typeSpecBuilder) {
+        int hash = System.identityHashCode(typeSpecBuilder);
+        return SNAPSHOTS[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Get the built TypeSpec for a builder, building it only if its members
+     * have changed since it was last built through this cache.
+     *
+     * @param typeSpecBuilder
+     * @return
+     */
+    public static TypeSpec of(TypeSpec.Builder typeSpecBuilder) {
+        Map<TypeSpec.Builder, Snapshot> stripe = stripe(typeSpecBuilder);
+        Snapshot snapshot;
+        synchronized (stripe) {
+            snapshot = stripe.get(typeSpecBuilder);
+        }
+        if (snapshot == null || !snapshot.matches(typeSpecBuilder)) {
+            snapshot = new Snapshot(typeSpecBuilder.build(), typeSpecBuilder);
+            synchronized (stripe) {
+                stripe.put(typeSpecBuilder, snapshot);
+            }
+        }
+        return snapshot.typeSpec;
+    }
+
+    /**
+     * Record a TypeSpec already built from a builder, such as the builder
+     * returned by its toBuilder(), so that it need not be built again
+     *
+     * @param typeSpecBuilder
+     * @param typeSpec
+     */
+    static void put(TypeSpec.Builder typeSpecBuilder, TypeSpec typeSpec) {
+        Map<TypeSpec.Builder, Snapshot> stripe = stripe(typeSpecBuilder);
+        Snapshot snapshot = new Snapshot(typeSpec, typeSpecBuilder);
+        synchronized (stripe) {
+            stripe.put(typeSpecBuilder, snapshot);
+        }
+    }
+
+    /**
+     * Discard any snapshot of a builder
+     *
+     * @param typeSpecBuilder
+     */
+    public static void invalidate(TypeSpec.Builder typeSpecBuilder) {
+        Map<TypeSpec.Builder, Snapshot> stripe = stripe(typeSpecBuilder);
+        synchronized (stripe) {
+            stripe.remove(typeSpecBuilder);
+        }
+    }
+
+    private static Object[][] members(TypeSpec.Builder builder) {
+        return new Object[][]{
+            builder.fieldSpecs.toArray(),
+            builder.methodSpecs.toArray(),
+            builder.typeSpecs.toArray(),
+            builder.annotations.toArray(),
+            builder.modifiers.toArray(),
+            builder.superinterfaces.toArray(),
+            builder.typeVariables.toArray(),
+            builder.originatingElements.toArray(),
+            builder.enumConstants.keySet().toArray(),
+            builder.enumConstants.values().toArray(),
+            builder.alwaysQualifiedNames.toArray()
+        };
+    }
+
+    /**
+     * Whether every element of a list is the same object as in an array
+     */
+    private static boolean same(List<?> list, Object[] members) {
+        if (list.size() != members.length) {
+            return false;
+        }
+        for (int i = 0; i < members.length; i++) {
+            if (list.get(i) != members[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether every element of a collection is the same object as in an
+     * array, in iteration order
+     */
+    private static boolean same(Collection<?> collection, Object[] members) {
+        if (collection.size() != members.length) {
+            return false;
+        }
+        int i = 0;
+        for (Object member : collection) {
+            if (member != members[i++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Snapshot {
+
+        private final TypeSpec typeSpec;
+        private final Object[][] members;
+
+        Snapshot(TypeSpec typeSpec, TypeSpec.Builder builder) {
+            this.typeSpec = typeSpec;
+            this.members = members(builder);
+        }
+
+        /**
+         * Compares the live lists of the builder, so that a hit allocates
+         * nothing but the iterators of the enum constants and always
+         * qualified names
+         */
+        boolean matches(TypeSpec.Builder builder) {
+            return same(builder.fieldSpecs, members[0])
+                    && same(builder.methodSpecs, members[1])
+                    && same(builder.typeSpecs, members[2])
+                    && same(builder.annotations, members[3])
+                    && same(builder.modifiers, members[4])
+                    && same(builder.superinterfaces, members[5])
+                    && same(builder.typeVariables, members[6])
+                    && same(builder.originatingElements, members[7])
+                    && same(builder.enumConstants.keySet(), members[8])
+                    && same(builder.enumConstants.values(), members[9])
+                    && same(builder.alwaysQualifiedNames, members[10]);
+        }
+    }
+}
@@ -15,17 +15,41 @@
  */
 package tech.cae.javabard;
 
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeSpec.Kind;
+import com.squareup.javapoet.WildcardTypeName;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import javax.lang.model.element.Modifier;
 
 /**
@@ -34,6 +58,17 @@ import javax.lang.model.element.Modifier;
  */
 public class VisitorSpec {
 
+    private static final Set<ClassName> ITERABLES = new HashSet<>(Arrays.asList(
+            ClassName.get(Iterable.class), ClassName.get(Collection.class), ClassName.get(List.class),
+            ClassName.get(Set.class), ClassName.get(SortedSet.class), ClassName.get(NavigableSet.class),
+            ClassName.get(Queue.class), ClassName.get(Deque.class), ClassName.get(ArrayList.class),
+            ClassName.get(LinkedList.class), ClassName.get(HashSet.class), ClassName.get(LinkedHashSet.class),
+            ClassName.get(TreeSet.class), ClassName.get(ArrayDeque.class)));
+    private static final Set<ClassName> MAPS = new HashSet<>(Arrays.asList(
+            ClassName.get(Map.class), ClassName.get(SortedMap.class), ClassName.get(NavigableMap.class),
+            ClassName.get(HashMap.class), ClassName.get(LinkedHashMap.class), ClassName.get(TreeMap.class),
+            ClassName.get(ConcurrentMap.class), ClassName.get(ConcurrentHashMap.class)));
+
     public static Builder builder(String packageName, String rootName) {
         return new Builder(packageName, rootName);
     }
@@ -44,6 +79,9 @@ public class VisitorSpec {
         private final String rootName;
         private final Map<TypeName, List<TypeSpec.Builder>> implementingTypes = new LinkedHashMap<>();
         private final Map<TypeName, TypeSpec.Builder> visitedTypes = new LinkedHashMap<>();
+        private boolean iterative = false;
+        private int forkDepth = -1;
+        private boolean traversalControl = false;
 
         Builder(String packageName, String rootName) {
             this.packageName = packageName;
@@ -51,7 +89,7 @@ public class VisitorSpec {
         }
 
         public Builder withVisitingType(String packageName, TypeSpec.Builder type, TypeSpec.Builder... implementors) {
-            visitedTypes.put(ClassName.get(packageName == null ? this.packageName : packageName, type.build().name), type);
+            visitedTypes.put(ClassName.get(packageName == null ? this.packageName : packageName, TypeSpecSnapshot.of(type).name), type);
             return withImplementors(packageName, type, implementors);
         }
 
@@ -61,7 +99,7 @@ public class VisitorSpec {
 
         public Builder withImplementors(String packageName, TypeSpec.Builder of, TypeSpec.Builder... implementors) {
             if (implementors.length > 0) {
-                implementingTypes.merge(ClassName.get(packageName == null ? this.packageName : packageName, of.build().name),
+                implementingTypes.merge(ClassName.get(packageName == null ? this.packageName : packageName, TypeSpecSnapshot.of(of).name),
                         Arrays.asList(implementors),
                         (a, b) -> {
                             List<TypeSpec.Builder> c = new ArrayList<>(a);
@@ -76,6 +114,53 @@ public class VisitorSpec {
             return withImplementors(null, of, implementors);
         }
 
+        /**
+         * Also generate a Walker, which visits with an explicit stack rather
+         * than recursion, and also visits elements of Iterable fields, values
+         * of Map fields and elements of array fields. Like the visit methods,
+         * it enters each node as its visited class, whatever the declared
+         * type of the field holding it.
+         *
+         * @return
+         */
+        public Builder withIterativeTraversal() {
+            iterative = true;
+            return this;
+        }
+
+        /**
+         * Also generate a ParallelWalker, which visits each subtree down to a
+         * depth in its own fork-join task, with its own visitor from a
+         * factory, and merges the visitors of child subtrees into their
+         * parent with the combine method of the VisitorBase. Below the fork
+         * depth, subtrees are visited by a Walker. Implies
+         * withIterativeTraversal.
+         *
+         * @param forkDepth default depth of the deepest forked subtrees
+         * @return
+         */
+        public Builder withParallelTraversal(int forkDepth) {
+            if (forkDepth < 0) {
+                throw new IllegalArgumentException("Fork depth must not be negative");
+            }
+            this.iterative = true;
+            this.forkDepth = forkDepth;
+            return this;
+        }
+
+        /**
+         * Make enter methods return a Traversal, which is CONTINUE to visit
+         * the children, SKIP_CHILDREN to go straight to the exit method, or
+         * STOP to end the visit without calling any further methods. visit
+         * and walk methods return false if the visit was stopped.
+         *
+         * @return
+         */
+        public Builder withTraversalControl() {
+            this.traversalControl = true;
+            return this;
+        }
+
         public VisitorInterfaceAndBase build() {
             TypeSpec.Builder visitor = TypeSpec.interfaceBuilder(rootName + "Visitor")
                     .addModifiers(Modifier.PUBLIC);
@@ -83,43 +168,61 @@ public class VisitorSpec {
             TypeSpec.Builder base = TypeSpec.classBuilder(rootName + "VisitorBase")
                     .addModifiers(Modifier.ABSTRACT, Modifier.PUBLIC)
                     .addSuperinterface(visitorName);
+            ClassName walkerName = ClassName.get(packageName, rootName + "Walker");
+            ClassName traversalName = traversalControl ? ClassName.get(packageName, rootName + "Traversal") : null;
+            Map<ClassName, String> kinds = new LinkedHashMap<>();
+            Set<ClassName> interfaces = new HashSet<>();
             for (Map.Entry<TypeName, TypeSpec.Builder> entry : visitedTypes.entrySet()) {
-                Map<TypeName, String> visitingFields = new LinkedHashMap<>();
-                for (FieldSpec field : entry.getValue().fieldSpecs) {
-                    if (visitedTypes.containsKey(field.type)) {
-                        visitingFields.put(field.type, field.name);
-                    }
+                kinds.put((ClassName) entry.getKey(), "KIND_" + Names.constantName(((ClassName) entry.getKey()).simpleName()));
+                if (TypeSpecSnapshot.of(entry.getValue()).kind == Kind.INTERFACE) {
+                    interfaces.add((ClassName) entry.getKey());
                 }
-                if (entry.getValue().build().kind == Kind.INTERFACE) {
+            }
+            for (Map.Entry<TypeName, TypeSpec.Builder> entry : visitedTypes.entrySet()) {
+                TypeSpec visitedType = TypeSpecSnapshot.of(entry.getValue());
+                String typeName = visitedType.name;
+                Map<String, TypeName> visitingFields = getVisitingFields(visitedType);
+                if (visitedType.kind == Kind.INTERFACE) {
 
                 } else {
                     MethodSpec.Builder visitMethod = MethodSpec.methodBuilder("visit")
                             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
                             .addParameter(visitorName, "visitor");
-                    visitMethod.addCode("visitor.enter$T(this)", entry.getKey());
-                    for (Map.Entry<TypeName, String> visitingField : visitingFields.entrySet()) {
-                        visitMethod.beginControlFlow("if($T==null)", visitingField.getValue());
-                        visitMethod.addCode("visitor.enter$T(null)", visitingField.getKey());
-                        visitMethod.addCode("visitor.exit$T(null)", visitingField.getKey());
-                        visitMethod.nextControlFlow("else");
-                        visitMethod.addCode("$N.visit(visitor)", visitingField.getValue());
-                        visitMethod.endControlFlow();
+                    if (traversalControl) {
+                        entry.getValue().addMethod(makeControlledVisit(visitMethod, typeName, visitingFields, traversalName));
+                    } else {
+                        visitMethod.addStatement("visitor.enter$L(this)", typeName);
+                        for (Map.Entry<String, TypeName> visitingField : visitingFields.entrySet()) {
+                            String fieldTypeName = ((ClassName) visitingField.getValue()).simpleName();
+                            visitMethod.beginControlFlow("if ($N == null)", visitingField.getKey());
+                            visitMethod.addStatement("visitor.enter$L(null)", fieldTypeName);
+                            visitMethod.addStatement("visitor.exit$L(null)", fieldTypeName);
+                            visitMethod.nextControlFlow("else");
+                            visitMethod.addStatement("$N.visit(visitor)", visitingField.getKey());
+                            visitMethod.endControlFlow();
+                        }
+                        visitMethod.addStatement("visitor.exit$L(this)", typeName);
+                        entry.getValue().addMethod(visitMethod.build());
+                    }
+                    if (iterative) {
+                        entry.getValue().addMethod(makePushChildren(visitedType, walkerName, kinds));
                     }
-                    visitMethod.addCode("visitor.exit$T(this)", entry.getKey());
-                    entry.getValue().addMethod(visitMethod.build());
                 }
-                String typeName = entry.getValue().build().name;
                 visitor.addMethod(MethodSpec.methodBuilder("enter" + typeName)
-                        .addModifiers(Modifier.PUBLIC)
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
                         .addParameter(entry.getKey(), "visited")
+                        .returns(traversalControl ? traversalName : TypeName.VOID)
                         .build());
-                base.addMethod(MethodSpec.methodBuilder("enter" + typeName)
+                MethodSpec.Builder baseEnter = MethodSpec.methodBuilder("enter" + typeName)
                         .addModifiers(Modifier.PUBLIC)
                         .addParameter(entry.getKey(), "visited")
-                        .addAnnotation(Override.class)
-                        .build());
+                        .addAnnotation(Override.class);
+                if (traversalControl) {
+                    baseEnter.returns(traversalName).addStatement("return $T.CONTINUE", traversalName);
+                }
+                base.addMethod(baseEnter.build());
                 visitor.addMethod(MethodSpec.methodBuilder("exit" + typeName)
-                        .addModifiers(Modifier.PUBLIC)
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
                         .addParameter(entry.getKey(), "visited")
                         .build());
                 base.addMethod(MethodSpec.methodBuilder("exit" + typeName)
@@ -128,14 +231,370 @@ public class VisitorSpec {
                         .addAnnotation(Override.class)
                         .build());
             }
-            return new VisitorInterfaceAndBase(visitor, base);
+            TypeSpec.Builder parallelWalker = null;
+            if (forkDepth >= 0) {
+                ClassName baseName = ClassName.get(packageName, rootName + "VisitorBase");
+                base.addMethod(MethodSpec.methodBuilder("combine")
+                        .addJavadoc("Merge the results of a visitor of a child subtree, in a parallel walk\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(baseName, "other")
+                        .build());
+                parallelWalker = makeParallelWalker(ClassName.get(packageName, rootName + "ParallelWalker"), walkerName, baseName, kinds, traversalName);
+            }
+            TypeSpec.Builder traversal = null;
+            if (traversalControl) {
+                traversal = TypeSpec.enumBuilder(traversalName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addJavadoc("What to do after entering a node\n")
+                        .addEnumConstant("CONTINUE")
+                        .addEnumConstant("SKIP_CHILDREN")
+                        .addEnumConstant("STOP");
+            }
+            return new VisitorInterfaceAndBase(visitor, base, iterative ? makeWalker(walkerName, visitorName, kinds, interfaces, traversalName) : null, parallelWalker, traversal);
         }
 
-        Map<TypeName, String> getVisitingFields(TypeName typeName, TypeSpec.Builder typeSpec) {
-            Map<TypeName, String> visitingFields = new LinkedHashMap<>();
+        private MethodSpec makeControlledVisit(MethodSpec.Builder visitMethod, String typeName, Map<String, TypeName> visitingFields, ClassName traversalName) {
+            visitMethod.addJavadoc("@return false if the visit was stopped\n")
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("$T traversal = visitor.enter$L(this)", traversalName, typeName)
+                    .beginControlFlow("if (traversal == $T.STOP)", traversalName)
+                    .addStatement("return false")
+                    .endControlFlow();
+            if (!visitingFields.isEmpty()) {
+                visitMethod.beginControlFlow("if (traversal == $T.CONTINUE)", traversalName);
+                for (Map.Entry<String, TypeName> visitingField : visitingFields.entrySet()) {
+                    String fieldTypeName = ((ClassName) visitingField.getValue()).simpleName();
+                    visitMethod.beginControlFlow("if ($N == null)", visitingField.getKey())
+                            .beginControlFlow("if (visitor.enter$L(null) == $T.STOP)", fieldTypeName, traversalName)
+                            .addStatement("return false")
+                            .endControlFlow()
+                            .addStatement("visitor.exit$L(null)", fieldTypeName)
+                            .nextControlFlow("else if (!$N.visit(visitor))", visitingField.getKey())
+                            .addStatement("return false")
+                            .endControlFlow();
+                }
+                visitMethod.endControlFlow();
+            }
+            return visitMethod.addStatement("visitor.exit$L(this)", typeName)
+                    .addStatement("return true")
+                    .build();
+        }
+
+        private MethodSpec makePushChildren(TypeSpec visitedType, ClassName walkerName, Map<ClassName, String> kinds) {
+            MethodSpec.Builder pushChildren = MethodSpec.methodBuilder("pushChildren")
+                    .addJavadoc("Push the children of this onto a walker, in field order\n")
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addParameter(walkerName, "walker");
+            for (FieldSpec field : visitedType.fieldSpecs) {
+                if (field.hasModifier(Modifier.STATIC)) {
+                    continue;
+                }
+                if (kinds.containsKey(field.type)) {
+                    pushChildren.addStatement("walker.push(this.$N, $T.$N)", field.name, walkerName, kinds.get(field.type));
+                    continue;
+                }
+                String elements = null;
+                TypeName element = null;
+                if (field.type instanceof ArrayTypeName) {
+                    elements = "this.$N";
+                    element = ((ArrayTypeName) field.type).componentType;
+                } else if (field.type instanceof ParameterizedTypeName) {
+                    ParameterizedTypeName parameterized = (ParameterizedTypeName) field.type;
+                    if (ITERABLES.contains(parameterized.rawType)) {
+                        elements = "this.$N";
+                        element = parameterized.typeArguments.get(0);
+                    } else if (MAPS.contains(parameterized.rawType)) {
+                        elements = "this.$N.values()";
+                        element = parameterized.typeArguments.get(1);
+                    }
+                }
+                if (element instanceof WildcardTypeName && !((WildcardTypeName) element).upperBounds.isEmpty()) {
+                    element = ((WildcardTypeName) element).upperBounds.get(0);
+                }
+                if (elements != null && kinds.containsKey(element)) {
+                    pushChildren.beginControlFlow("if (this.$N != null)", field.name)
+                            .beginControlFlow("for ($T child : " + elements + ")", element, field.name)
+                            .addStatement("walker.push(child, $T.$N)", walkerName, kinds.get(element))
+                            .endControlFlow()
+                            .endControlFlow();
+                }
+            }
+            return pushChildren.build();
+        }
+
+        private TypeSpec.Builder makeParallelWalker(ClassName parallelWalkerName, ClassName walkerName, ClassName baseName, Map<ClassName, String> kinds, ClassName traversalName) {
+            ClassName taskName = parallelWalkerName.nestedClass("Task");
+            TypeName factory = ParameterizedTypeName.get(ClassName.get(Supplier.class), WildcardTypeName.subtypeOf(baseName));
+            TypeSpec.Builder parallelWalker = TypeSpec.classBuilder(parallelWalkerName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addJavadoc("Visits subtrees in parallel fork-join tasks, each with its own visitor.\n"
+                            + "A task enters its node, combines the visitors of its children's tasks in order, then exits its node.\n")
+                    .addField(factory, "factory", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(TypeName.INT, "forkDepth", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(ForkJoinPool.class, "pool", Modifier.PRIVATE, Modifier.FINAL)
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(factory, "factory")
+                            .addStatement("this(factory, $L, $T.commonPool())", forkDepth, ForkJoinPool.class)
+                            .build())
+                    .addMethod(MethodSpec.constructorBuilder()
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(factory, "factory")
+                            .addParameter(TypeName.INT, "forkDepth")
+                            .addParameter(ForkJoinPool.class, "pool")
+                            .addStatement("this.factory = factory")
+                            .addStatement("this.forkDepth = forkDepth")
+                            .addStatement("this.pool = pool")
+                            .build());
+            for (Map.Entry<ClassName, String> entry : kinds.entrySet()) {
+                MethodSpec.Builder walk = MethodSpec.methodBuilder("walk")
+                        .addJavadoc("@return the visitor of the root, combined with all others\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(entry.getKey(), "root")
+                        .returns(baseName);
+                if (traversalName == null) {
+                    walk.addStatement("return pool.invoke(new $T(root, $T.kindOf(root, $T.$N), 0))", taskName, walkerName, walkerName, entry.getValue());
+                } else {
+                    walk.addStatement("return pool.invoke(new $T(root, $T.kindOf(root, $T.$N), 0, new $T()))", taskName, walkerName, walkerName, entry.getValue(), AtomicBoolean.class);
+                }
+                parallelWalker.addMethod(walk.build());
+            }
+            MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "kind")
+                    .addParameter(TypeName.INT, "depth")
+                    .addStatement("this.node = node")
+                    .addStatement("this.kind = kind")
+                    .addStatement("this.depth = depth");
+            MethodSpec.Builder compute = MethodSpec.methodBuilder("compute")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PROTECTED)
+                    .returns(baseName)
+                    .addStatement("$T visitor = factory.get()", baseName);
+            String arguments = "children.nodes[i], children.kinds[i], depth + 1";
+            if (traversalName == null) {
+                compute.beginControlFlow("if (node == null || depth >= forkDepth)")
+                        .addStatement("new $T().walk(node, kind, visitor)", walkerName)
+                        .addStatement("return visitor")
+                        .endControlFlow()
+                        .addStatement("$T.enter(node, kind, visitor)", walkerName);
+            } else {
+                constructor.addParameter(AtomicBoolean.class, "stopped")
+                        .addStatement("this.stopped = stopped");
+                arguments += ", stopped";
+                compute.beginControlFlow("if (stopped.get())")
+                        .addStatement("return visitor")
+                        .endControlFlow()
+                        .beginControlFlow("if (node == null || depth >= forkDepth)")
+                        .beginControlFlow("if (!new $T().walk(node, kind, visitor))", walkerName)
+                        .addStatement("stopped.set(true)")
+                        .endControlFlow()
+                        .addStatement("return visitor")
+                        .endControlFlow()
+                        .addStatement("$T traversal = $T.enter(node, kind, visitor)", traversalName, walkerName)
+                        .beginControlFlow("if (traversal == $T.STOP)", traversalName)
+                        .addStatement("stopped.set(true)")
+                        .addStatement("return visitor")
+                        .endControlFlow()
+                        .beginControlFlow("if (traversal == $T.CONTINUE)", traversalName);
+            }
+            compute.addStatement("$T children = new $T()", walkerName, walkerName)
+                    .addStatement("children.pushChildren(node, kind)")
+                    .addStatement("$T tasks = new $T[children.size]", ArrayTypeName.of(taskName), taskName)
+                    .beginControlFlow("for (int i = 0; i < tasks.length; i++)")
+                    .addStatement("tasks[i] = new $T(" + arguments + ")", taskName)
+                    .endControlFlow()
+                    .addStatement("invokeAll(tasks)")
+                    .beginControlFlow("for ($T child : tasks)", taskName)
+                    .addStatement("visitor.combine(child.join())")
+                    .endControlFlow();
+            if (traversalName != null) {
+                compute.endControlFlow()
+                        .beginControlFlow("if (!stopped.get())")
+                        .addStatement("$T.exit(node, kind, visitor)", walkerName)
+                        .endControlFlow();
+            } else {
+                compute.addStatement("$T.exit(node, kind, visitor)", walkerName);
+            }
+            TypeSpec.Builder task = TypeSpec.classBuilder(taskName)
+                    .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                    .superclass(ParameterizedTypeName.get(ClassName.get(RecursiveTask.class), baseName))
+                    .addField(Object.class, "node", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(TypeName.INT, "kind", Modifier.PRIVATE, Modifier.FINAL)
+                    .addField(TypeName.INT, "depth", Modifier.PRIVATE, Modifier.FINAL);
+            if (traversalName != null) {
+                task.addField(AtomicBoolean.class, "stopped", Modifier.PRIVATE, Modifier.FINAL);
+                parallelWalker.addJavadoc("Once any visitor stops, tasks that have not started return immediately, and no more exit methods are called.\n");
+            }
+            return parallelWalker.addType(task.addMethod(constructor.build())
+                    .addMethod(compute.addStatement("return visitor").build())
+                    .build());
+        }
+
+        private TypeSpec.Builder makeWalker(ClassName walkerName, TypeName visitorName, Map<ClassName, String> kinds, Set<ClassName> interfaces, ClassName traversalName) {
+            TypeSpec.Builder walker = TypeSpec.classBuilder(walkerName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addJavadoc("Visits without recursion, using a stack of frames that is reused between walks.\n"
+                            + "A node is entered as its runtime class, as the visit methods do, or as its declared type if it is null.\n"
+                            + "An exit frame is pushed with the complement of its kind.\n")
+                    .addField(FieldSpec.builder(Object[].class, "nodes")
+                            .initializer("new Object[16]")
+                            .build())
+                    .addField(FieldSpec.builder(int[].class, "kinds")
+                            .initializer("new int[16]")
+                            .build())
+                    .addField(TypeName.INT, "size");
+            MethodSpec.Builder enter = MethodSpec.methodBuilder("enter")
+                    .addModifiers(Modifier.STATIC)
+                    .returns(traversalName == null ? TypeName.VOID : traversalName)
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "kind")
+                    .addParameter(visitorName, "visitor")
+                    .beginControlFlow("switch (kind)");
+            MethodSpec.Builder exit = MethodSpec.methodBuilder("exit")
+                    .addModifiers(Modifier.STATIC)
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "kind")
+                    .addParameter(visitorName, "visitor")
+                    .beginControlFlow("switch (kind)");
+            MethodSpec.Builder pushChildren = MethodSpec.methodBuilder("pushChildren")
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "kind")
+                    .beginControlFlow("switch (kind)");
+            MethodSpec.Builder kindOf = MethodSpec.methodBuilder("kindOf")
+                    .addJavadoc("@return the kind of the visited class of a node, or the kind of its declared type if it is null\n")
+                    .addModifiers(Modifier.STATIC)
+                    .returns(TypeName.INT)
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "declared");
+            int kind = 0;
+            for (Map.Entry<ClassName, String> entry : kinds.entrySet()) {
+                walker.addField(FieldSpec.builder(TypeName.INT, entry.getValue(), Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", kind++)
+                        .build());
+                MethodSpec.Builder walk = MethodSpec.methodBuilder("walk")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(entry.getKey(), "root")
+                        .addParameter(visitorName, "visitor");
+                String simpleName = entry.getKey().simpleName();
+                if (traversalName == null) {
+                    walker.addMethod(walk.addStatement("walk(root, $N, visitor)", entry.getValue()).build());
+                    enter.addCode("case $N:\n", entry.getValue())
+                            .addStatement("$>visitor.enter$L(($T) node)", simpleName, entry.getKey())
+                            .addStatement("break$<");
+                } else {
+                    walker.addMethod(walk.addJavadoc("@return false if the visit was stopped\n")
+                            .returns(TypeName.BOOLEAN)
+                            .addStatement("return walk(root, $N, visitor)", entry.getValue())
+                            .build());
+                    enter.addCode("case $N:\n", entry.getValue())
+                            .addStatement("$>return visitor.enter$L(($T) node)$<", simpleName, entry.getKey());
+                }
+                exit.addCode("case $N:\n", entry.getValue())
+                        .addStatement("$>visitor.exit$L(($T) node)", simpleName, entry.getKey())
+                        .addStatement("break$<");
+                if (interfaces.contains(entry.getKey())) {
+                    // Only reached by an implementation that is not a visited class, whose children are unknown
+                    pushChildren.addCode("case $N:\n", entry.getValue())
+                            .addStatement("$>break$<");
+                } else {
+                    // Visited classes cannot extend each other, as their visit methods are final
+                    kindOf.beginControlFlow("if (node instanceof $T)", entry.getKey())
+                            .addStatement("return $N", entry.getValue())
+                            .endControlFlow();
+                    pushChildren.addCode("case $N:\n", entry.getValue())
+                            .addStatement("$>(($T) node).pushChildren(this)", entry.getKey())
+                            .addStatement("break$<");
+                }
+            }
+            for (MethodSpec.Builder method : Arrays.asList(enter, exit, pushChildren)) {
+                method.addCode("default:\n")
+                        .addStatement("$>throw new $T(\"Unknown kind \" + kind)$<", IllegalArgumentException.class)
+                        .endControlFlow();
+            }
+            MethodSpec.Builder walk = MethodSpec.methodBuilder("walk")
+                    .addParameter(Object.class, "root")
+                    .addParameter(TypeName.INT, "kind")
+                    .addParameter(visitorName, "visitor")
+                    .addStatement("int base = size")
+                    .addStatement("push(root, kind)")
+                    .beginControlFlow("try")
+                    .beginControlFlow("while (size > base)")
+                    .addStatement("int top = --size")
+                    .addStatement("$T node = nodes[top]", Object.class)
+                    .addStatement("int frame = kinds[top]")
+                    .addStatement("nodes[top] = null")
+                    .beginControlFlow("if (frame < 0)")
+                    .addStatement("exit(node, ~frame, visitor)")
+                    .addStatement("continue")
+                    .endControlFlow()
+                    .addStatement("pushFrame(node, ~frame)");
+            if (traversalName == null) {
+                walk.addStatement("enter(node, frame, visitor)")
+                        .beginControlFlow("if (node != null)");
+            } else {
+                walk.returns(TypeName.BOOLEAN)
+                        .addStatement("$T traversal = enter(node, frame, visitor)", traversalName)
+                        .beginControlFlow("if (traversal == $T.STOP)", traversalName)
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .beginControlFlow("if (node != null && traversal == $T.CONTINUE)", traversalName);
+            }
+            walk.addStatement("int mark = size")
+                    .addStatement("pushChildren(node, frame)")
+                    .addStatement("reverse(mark, size - 1)")
+                    .endControlFlow()
+                    .endControlFlow();
+            if (traversalName != null) {
+                walk.addStatement("return true");
+            }
+            walker.addMethod(walk.nextControlFlow("finally")
+                    .addStatement("$T.fill(nodes, base, size, null)", Arrays.class)
+                    .addStatement("size = base")
+                    .endControlFlow()
+                    .build());
+            walker.addMethod(MethodSpec.methodBuilder("push")
+                    .addJavadoc("Push a node, which may be null, with the kind of its declared type\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "kind")
+                    .addStatement("pushFrame(node, kindOf(node, kind))")
+                    .build());
+            walker.addMethod(MethodSpec.methodBuilder("pushFrame")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(Object.class, "node")
+                    .addParameter(TypeName.INT, "frame")
+                    .beginControlFlow("if (size == nodes.length)")
+                    .addStatement("nodes = $T.copyOf(nodes, size * 2)", Arrays.class)
+                    .addStatement("kinds = $T.copyOf(kinds, size * 2)", Arrays.class)
+                    .endControlFlow()
+                    .addStatement("nodes[size] = node")
+                    .addStatement("kinds[size++] = frame")
+                    .build());
+            walker.addMethod(MethodSpec.methodBuilder("reverse")
+                    .addModifiers(Modifier.PRIVATE)
+                    .addParameter(TypeName.INT, "from")
+                    .addParameter(TypeName.INT, "to")
+                    .beginControlFlow("for (int i = from, j = to; i < j; i++, j--)")
+                    .addStatement("$T node = nodes[i]", Object.class)
+                    .addStatement("nodes[i] = nodes[j]")
+                    .addStatement("nodes[j] = node")
+                    .addStatement("int kind = kinds[i]")
+                    .addStatement("kinds[i] = kinds[j]")
+                    .addStatement("kinds[j] = kind")
+                    .endControlFlow()
+                    .build());
+            return walker.addMethod(kindOf.addStatement("return declared").build())
+                    .addMethod(enter.build())
+                    .addMethod(exit.build())
+                    .addMethod(pushChildren.build());
+        }
+
+        Map<String, TypeName> getVisitingFields(TypeSpec typeSpec) {
+            Map<String, TypeName> visitingFields = new LinkedHashMap<>();
             for (FieldSpec field : typeSpec.fieldSpecs) {
-                if (visitedTypes.containsKey(field.type)) {
-                    visitingFields.put(field.type, field.name);
+                if (!field.hasModifier(Modifier.STATIC) && visitedTypes.containsKey(field.type)) {
+                    visitingFields.put(field.name, field.type);
                 }
             }
             return visitingFields;
@@ -146,10 +605,16 @@ public class VisitorSpec {
 
         private final TypeSpec.Builder visitor;
         private final TypeSpec.Builder base;
+        private final TypeSpec.Builder walker;
+        private final TypeSpec.Builder parallelWalker;
+        private final TypeSpec.Builder traversal;
 
-        VisitorInterfaceAndBase(TypeSpec.Builder visitor, TypeSpec.Builder base) {
+        VisitorInterfaceAndBase(TypeSpec.Builder visitor, TypeSpec.Builder base, TypeSpec.Builder walker, TypeSpec.Builder parallelWalker, TypeSpec.Builder traversal) {
             this.visitor = visitor;
             this.base = base;
+            this.walker = walker;
+            this.parallelWalker = parallelWalker;
+            this.traversal = traversal;
         }
 
         public TypeSpec.Builder getVisitor() {
@@ -160,5 +625,29 @@ public class VisitorSpec {
             return base;
         }
 
+        /**
+         *
+         * @return the Walker, or null without withIterativeTraversal
+         */
+        public TypeSpec.Builder getWalker() {
+            return walker;
+        }
+
+        /**
+         *
+         * @return the ParallelWalker, or null without withParallelTraversal
+         */
+        public TypeSpec.Builder getParallelWalker() {
+            return parallelWalker;
+        }
+
+        /**
+         *
+         * @return the Traversal enum, or null without withTraversalControl
+         */
+        public TypeSpec.Builder getTraversal() {
+            return traversal;
+        }
+
     }
 }
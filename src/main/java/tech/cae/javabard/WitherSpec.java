@@ -0,0 +1,136 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generate withX methods, toBuilder() and update() for an immutable class,
+ * using the constructor and Builder generated by BuilderSpec.
+ *
+ * A change that leaves every field identical (==) returns the same instance;
+ * otherwise exactly one new instance is made, sharing the unchanged fields.
+ *
+ * @author peter
+ */
+public class WitherSpec {
+
+    public static WitherSpec.Builder forType(String packageName, TypeSpec.Builder typeSpecBuilder) {
+        return new Builder(packageName, typeSpecBuilder);
+    }
+
+    public static class Builder {
+
+        private final String packageName;
+        private final TypeSpec.Builder typeSpecBuilder;
+        private final TypeSpec typeSpec;
+        private String namingConvention = "with$N";
+        private String builderClassName = "Builder";
+
+        Builder(String packageName, TypeSpec.Builder typeSpecBuilder) {
+            this.packageName = packageName;
+            this.typeSpecBuilder = typeSpecBuilder;
+            this.typeSpec = TypeSpecSnapshot.of(typeSpecBuilder);
+        }
+
+        public Builder withNamingConvention(String n) {
+            this.namingConvention = n;
+            return this;
+        }
+
+        /**
+         * The name given to BuilderSpec.Builder.withBuilderClassName, if any
+         *
+         * @param name
+         * @return
+         */
+        public Builder withBuilderClassName(String name) {
+            this.builderClassName = name;
+            return this;
+        }
+
+        public TypeSpec.Builder build() {
+            ClassName typeName = ClassName.get(packageName, typeSpec.name);
+            ClassName builderName = typeName.nestedClass(builderClassName);
+            List<FieldSpec> fields = new ArrayList<>();
+            for (FieldSpec field : typeSpec.fieldSpecs) {
+                if (!field.hasModifier(Modifier.STATIC) && !EqualsSpec.isHashCodeCache(field)) {
+                    if (!field.hasModifier(Modifier.FINAL)) {
+                        throw new IllegalStateException("Field " + field.name + " of " + typeSpec.name + " is not final");
+                    }
+                    fields.add(field);
+                }
+            }
+            for (FieldSpec field : fields) {
+                CodeBlock.Builder arguments = CodeBlock.builder();
+                for (FieldSpec other : fields) {
+                    if (other != fields.get(0)) {
+                        arguments.add(", ");
+                    }
+                    arguments.add(other == field ? "value" : "this.$N", other.name);
+                }
+                typeSpecBuilder.addMethod(MethodSpec.methodBuilder(Names.accessorName(namingConvention, field.name))
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(field.type, "value")
+                        .returns(typeName)
+                        .beginControlFlow("if (this.$N == value)", field.name)
+                        .addStatement("return this")
+                        .endControlFlow()
+                        .addStatement("return new $T($L)", typeName, arguments.build())
+                        .build());
+            }
+            MethodSpec.Builder toBuilder = MethodSpec.methodBuilder("toBuilder")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(builderName)
+                    .addStatement("$T builder = new $T()", builderName, builderName);
+            CodeBlock.Builder unchanged = CodeBlock.builder();
+            for (FieldSpec field : fields) {
+                toBuilder.addStatement("builder.$N = this.$N", field.name, field.name);
+                if (field != fields.get(0)) {
+                    unchanged.add(" && ");
+                }
+                unchanged.add("builder.$N == this.$N", field.name, field.name);
+            }
+            typeSpecBuilder.addMethod(toBuilder.addStatement("return builder").build());
+            MethodSpec.Builder update = MethodSpec.methodBuilder("update")
+                    .addJavadoc("Apply several changes with a single copy\n"
+                            + "@param changes applied to a Builder holding the current values\n"
+                            + "@return this if no field changed, otherwise a new instance\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(builderName)), "changes")
+                    .returns(typeName)
+                    .addStatement("$T builder = toBuilder()", builderName)
+                    .addStatement("changes.accept(builder)");
+            if (!fields.isEmpty()) {
+                update.beginControlFlow("if ($L)", unchanged.build())
+                        .addStatement("return this")
+                        .endControlFlow();
+            }
+            typeSpecBuilder.addMethod(update.addStatement("return builder.build()").build());
+            return typeSpecBuilder;
+        }
+    }
+}
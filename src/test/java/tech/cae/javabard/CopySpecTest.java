@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import javax.lang.model.element.Modifier;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author peter
+ */
+public class CopySpecTest {
+
+    private static final String PACKAGE = "tech.cae.javabard.generated.copy";
+    private static final ClassName NODE = ClassName.get(PACKAGE, "Node");
+    private static final TypeName STRING = ClassName.get(String.class);
+
+    private static GeneratedCode compileNode() throws Exception {
+        TypeSpec.Builder node = TypeSpec.classBuilder("Node")
+                .addModifiers(Modifier.PUBLIC)
+                .addField(ArrayTypeName.of(TypeName.INT), "values", Modifier.PUBLIC)
+                .addField(NODE, "next", Modifier.PUBLIC)
+                .addField(ParameterizedTypeName.get(ClassName.get(Map.class), STRING,
+                        ParameterizedTypeName.get(ClassName.get(List.class), STRING)), "index", Modifier.PUBLIC)
+                .addField(ParameterizedTypeName.get(ClassName.get(SortedSet.class), STRING), "sorted", Modifier.PUBLIC)
+                .addField(ParameterizedTypeName.get(ClassName.get(Queue.class), STRING), "queue", Modifier.PUBLIC)
+                .addField(ParameterizedTypeName.get(ClassName.get(Collection.class), STRING), "any", Modifier.PUBLIC)
+                .addField(ParameterizedTypeName.get(ClassName.get(Set.class), STRING), "fixed", Modifier.PUBLIC);
+        return GeneratedCode.compile(PACKAGE, CopySpec.forInstances(PACKAGE, node).build());
+    }
+
+    @Test
+    public void forInstancesCopiesTheObjectGraph() throws Exception {
+        GeneratedCode code = compileNode();
+        Object node = code.newInstance("Node");
+        Object next = code.newInstance("Node");
+        GeneratedCode.set(node, "values", new int[]{1, 2});
+        GeneratedCode.set(node, "next", next);
+        Object copy = GeneratedCode.call(node, "deepCopy");
+        assertNotSame(node, copy);
+        assertNotSame(GeneratedCode.get(node, "values"), GeneratedCode.get(copy, "values"));
+        assertArrayEquals(new int[]{1, 2}, (int[]) GeneratedCode.get(copy, "values"));
+        assertNotSame(next, GeneratedCode.get(copy, "next"));
+        assertNull(GeneratedCode.get(GeneratedCode.get(copy, "next"), "values"));
+    }
+
+    @Test
+    public void forInstancesKeepsTheKindOfCollections() throws Exception {
+        GeneratedCode code = compileNode();
+        Object node = code.newInstance("Node");
+        Map<String, List<String>> index = new LinkedHashMap<>();
+        index.put("z", new ArrayList<>(Arrays.asList("1")));
+        index.put("a", new ArrayList<>(Arrays.asList("2")));
+        GeneratedCode.set(node, "index", index);
+        SortedSet<String> sorted = new TreeSet<>(Comparator.reverseOrder());
+        sorted.addAll(Arrays.asList("a", "b", "c"));
+        GeneratedCode.set(node, "sorted", sorted);
+        GeneratedCode.set(node, "queue", new LinkedList<>(Arrays.asList(null, "x")));
+        PriorityQueue<String> any = new PriorityQueue<>(Comparator.reverseOrder());
+        any.addAll(Arrays.asList("a", "c", "b"));
+        GeneratedCode.set(node, "any", any);
+        Set<String> fixed = Collections.unmodifiableSet(Collections.singleton("f"));
+        GeneratedCode.set(node, "fixed", fixed);
+        Object copy = GeneratedCode.call(node, "deepCopy");
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> copiedIndex = (Map<String, List<String>>) GeneratedCode.get(copy, "index");
+        assertEquals(LinkedHashMap.class, copiedIndex.getClass());
+        assertEquals(Arrays.asList("z", "a"), new ArrayList<>(copiedIndex.keySet()));
+        assertNotSame(index.get("z"), copiedIndex.get("z"));
+        assertEquals(index, copiedIndex);
+        SortedSet<?> copiedSorted = (SortedSet<?>) GeneratedCode.get(copy, "sorted");
+        assertNotSame(sorted, copiedSorted);
+        assertSame(sorted.comparator(), copiedSorted.comparator());
+        assertEquals(Arrays.asList("c", "b", "a"), new ArrayList<>(copiedSorted));
+        Queue<?> copiedQueue = (Queue<?>) GeneratedCode.get(copy, "queue");
+        assertEquals(LinkedList.class, copiedQueue.getClass());
+        assertEquals(Arrays.asList(null, "x"), copiedQueue);
+        PriorityQueue<?> copiedAny = (PriorityQueue<?>) GeneratedCode.get(copy, "any");
+        assertNotSame(any, copiedAny);
+        assertEquals("c", copiedAny.peek());
+        // A kind that a copy could not keep is shared
+        assertSame(fixed, GeneratedCode.get(copy, "fixed"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void forInstancesRejectsAClashingConstructor() {
+        TypeSpec.Builder node = TypeSpec.classBuilder("Node")
+                .addField(NODE, "next")
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(NODE, "next")
+                        .addStatement("this.next = next")
+                        .build());
+        CopySpec.forInstances(PACKAGE, node).build();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compilation of generated types, and reflective access to the compiled code
+ *
+ * @author peter
+ */
+final class GeneratedCode {
+
+    private final String packageName;
+    private final ClassLoader loader;
+
+    private GeneratedCode(String packageName, ClassLoader loader) {
+        this.packageName = packageName;
+        this.loader = loader;
+    }
+
+    /**
+     * Compile generated types and load them in a new class loader
+     *
+     * @param packageName
+     * @param types
+     * @return
+     * @throws IOException
+     */
+    static GeneratedCode compile(String packageName, TypeSpec.Builder... types) throws IOException {
+        Path sources = Files.createTempDirectory("javabard-sources");
+        Path classes = Files.createTempDirectory("javabard-classes");
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(classes.toString());
+        arguments.add("-cp");
+        arguments.add(System.getProperty("java.class.path"));
+        for (TypeSpec.Builder type : types) {
+            JavaFile.builder(packageName, type.build()).build().writeTo(sources);
+        }
+        try (Stream<Path> files = Files.walk(sources)) {
+            arguments.addAll(files.filter(file -> file.toString().endsWith(".java"))
+                    .map(Path::toString)
+                    .collect(Collectors.toList()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Tests of generated code must be run on a JDK");
+        }
+        if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("Generated code did not compile, see " + sources);
+        }
+        return new GeneratedCode(packageName, new URLClassLoader(new URL[]{classes.toUri().toURL()}, GeneratedCode.class.getClassLoader()));
+    }
+
+    Class<?> load(String name) throws ClassNotFoundException {
+        return loader.loadClass(packageName + "." + name.replace('.', '$'));
+    }
+
+    Object newInstance(String name) throws ReflectiveOperationException {
+        return load(name).getConstructor().newInstance();
+    }
+
+    static Object get(Object target, String field) throws ReflectiveOperationException {
+        return target.getClass().getField(field).get(target);
+    }
+
+    static void set(Object target, String field, Object value) throws ReflectiveOperationException {
+        target.getClass().getField(field).set(target, value);
+    }
+
+    /**
+     * Call the public method of a name and number of parameters
+     *
+     * @param target
+     * @param method
+     * @param arguments
+     * @return
+     * @throws ReflectiveOperationException
+     */
+    static Object call(Object target, String method, Object... arguments) throws ReflectiveOperationException {
+        for (Method m : target.getClass().getMethods()) {
+            if (m.getName().equals(method) && m.getParameterCount() == arguments.length) {
+                try {
+                    return m.invoke(target, arguments);
+                } catch (IllegalArgumentException ex) {
+                    // An overload with other parameter types
+                } catch (InvocationTargetException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    throw ex;
+                }
+            }
+        }
+        throw new NoSuchMethodException(target.getClass().getName() + "." + method);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.Arrays;
+import javax.lang.model.element.Modifier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author peter
+ */
+public class PipelineSpecTest {
+
+    private static final String PACKAGE = "tech.cae.javabard.generated.pipeline";
+
+    private static TypeSpec.Builder point() {
+        return TypeSpec.classBuilder("Point")
+                .addModifiers(Modifier.PUBLIC)
+                .addField(FieldSpec.builder(TypeName.INT, "x", Modifier.PRIVATE).build())
+                .addField(FieldSpec.builder(ClassName.get(String.class), "label", Modifier.PRIVATE).build())
+                .addField(FieldSpec.builder(TypeName.LONG, "id", Modifier.PRIVATE, Modifier.FINAL).initializer("7L").build());
+    }
+
+    @Test
+    public void applyMergesEveryStage() throws Exception {
+        TypeSpec.Builder point = PipelineSpec.builder()
+                .withGetters("get$N")
+                .withSetters("set$N")
+                .withEquals()
+                .withDeepCopy()
+                .build()
+                .apply(PACKAGE, point());
+        GeneratedCode code = GeneratedCode.compile(PACKAGE, point);
+        Object a = code.newInstance("Point");
+        GeneratedCode.call(a, "setX", 3);
+        GeneratedCode.call(a, "setLabel", "a");
+        assertEquals(3, GeneratedCode.call(a, "getX"));
+        assertEquals(7L, GeneratedCode.call(a, "getId"));
+        Object copy = GeneratedCode.call(a, "deepCopy");
+        assertNotSame(a, copy);
+        assertEquals(a, copy);
+        assertEquals(a.hashCode(), copy.hashCode());
+        GeneratedCode.call(copy, "setLabel", "b");
+        assertNotEquals(a, copy);
+        // The final field has no setter
+        try {
+            GeneratedCode.call(a, "setId", 1L);
+            fail();
+        } catch (NoSuchMethodException ex) {
+        }
+    }
+
+    @Test
+    public void applyMergesModifiersOnce() {
+        PipelineSpec pipeline = PipelineSpec.builder()
+                .withStage("final", PipelineSpec.spec((p, b) -> b.addModifiers(Modifier.FINAL)))
+                .withStage("again", PipelineSpec.spec((p, b) -> b.addModifiers(Modifier.FINAL)))
+                .build();
+        assertEquals(Arrays.asList(Modifier.PUBLIC, Modifier.FINAL), pipeline.apply(PACKAGE, point()).modifiers);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void applyRejectsTwoStagesAddingTheSameMethod() {
+        PipelineSpec.builder()
+                .withGetters("get$N")
+                .withStage("more getters", PipelineSpec.getters("get$N"))
+                .build()
+                .apply(PACKAGE, point());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void applyRejectsAStageRemovingAField() {
+        PipelineSpec.builder()
+                .withStage("remove", PipelineSpec.spec((p, b) -> {
+                    b.fieldSpecs.remove(0);
+                    return b;
+                }))
+                .build()
+                .apply(PACKAGE, point());
+    }
+}
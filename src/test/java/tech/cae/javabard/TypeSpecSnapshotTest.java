@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import javax.lang.model.element.Modifier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author peter
+ */
+public class TypeSpecSnapshotTest {
+
+    private static final String PACKAGE = "tech.cae.javabard.generated.snapshot";
+
+    private static TypeSpec.Builder counter() {
+        return TypeSpec.classBuilder("Counter")
+                .addModifiers(Modifier.PUBLIC)
+                .addField(TypeName.INT, "count", Modifier.PRIVATE);
+    }
+
+    @Test
+    public void ofReusesTheSnapshotOfAnUnchangedBuilder() {
+        TypeSpec.Builder counter = counter();
+        assertSame(TypeSpecSnapshot.of(counter), TypeSpecSnapshot.of(counter));
+    }
+
+    @Test
+    public void ofRebuildsAChangedBuilder() {
+        TypeSpec.Builder counter = counter();
+        TypeSpec before = TypeSpecSnapshot.of(counter);
+        counter.addModifiers(Modifier.FINAL);
+        TypeSpec after = TypeSpecSnapshot.of(counter);
+        assertNotSame(before, after);
+        assertEquals(counter.build(), after);
+        // A member replaced in place is seen, as well as an added one
+        counter.fieldSpecs.set(0, FieldSpec.builder(TypeName.LONG, "count", Modifier.PRIVATE).build());
+        assertEquals(TypeName.LONG, TypeSpecSnapshot.of(counter).fieldSpecs.get(0).type);
+    }
+
+    @Test
+    public void invalidateDiscardsTheSnapshot() {
+        TypeSpec.Builder counter = counter();
+        TypeSpec before = TypeSpecSnapshot.of(counter);
+        counter.addJavadoc("Not seen by the snapshot\n");
+        assertSame(before, TypeSpecSnapshot.of(counter));
+        TypeSpecSnapshot.invalidate(counter);
+        assertEquals("Not seen by the snapshot\n", TypeSpecSnapshot.of(counter).javadoc.toString());
+    }
+
+    @Test
+    public void specsSharingASnapshotGenerateCode() throws Exception {
+        TypeSpec.Builder counter = counter();
+        GetterSpec.forType(counter).build();
+        SetterSpec.forType(counter).build();
+        EqualsSpec.forType(PACKAGE, counter).build();
+        GeneratedCode code = GeneratedCode.compile(PACKAGE, counter);
+        Object a = code.newInstance("Counter");
+        Object b = code.newInstance("Counter");
+        GeneratedCode.call(a, "setCount", 2);
+        GeneratedCode.call(b, "setCount", 2);
+        assertEquals(2, GeneratedCode.call(a, "getCount"));
+        assertEquals(a, b);
+    }
+}
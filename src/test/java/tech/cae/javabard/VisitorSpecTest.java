@@ -0,0 +1,150 @@
+/*
+ * Copyright 2026 CAE Tech Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tech.cae.javabard;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import javax.lang.model.element.Modifier;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author peter
+ */
+public class VisitorSpecTest {
+
+    private static final String PACKAGE = "tech.cae.javabard.generated.visitor";
+    private static final ClassName EXPR = ClassName.get(PACKAGE, "Expr");
+    private static final ClassName LIT = ClassName.get(PACKAGE, "Lit");
+    private static final ClassName VISITOR = ClassName.get(PACKAGE, "TreeVisitor");
+    private static final ClassName BASE = ClassName.get(PACKAGE, "TreeVisitorBase");
+
+    /**
+     * An interface Expr implemented by Add and Lit, and a Holder with a Lit
+     * field and an Expr field; and a Recorder visitor logging every enter and
+     * exit
+     */
+    private static GeneratedCode compileTree() throws Exception {
+        TypeSpec.Builder expr = TypeSpec.interfaceBuilder("Expr")
+                .addModifiers(Modifier.PUBLIC)
+                .addMethod(MethodSpec.methodBuilder("visit")
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                        .addParameter(VISITOR, "visitor")
+                        .build());
+        TypeSpec.Builder add = TypeSpec.classBuilder("Add")
+                .addModifiers(Modifier.PUBLIC)
+                .addSuperinterface(EXPR)
+                .addField(EXPR, "left", Modifier.PUBLIC)
+                .addField(EXPR, "right", Modifier.PUBLIC);
+        TypeSpec.Builder lit = TypeSpec.classBuilder("Lit")
+                .addModifiers(Modifier.PUBLIC)
+                .addSuperinterface(EXPR)
+                .addField(TypeName.INT, "value", Modifier.PUBLIC);
+        TypeSpec.Builder subLit = TypeSpec.classBuilder("SubLit")
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(LIT);
+        TypeSpec.Builder holder = TypeSpec.classBuilder("Holder")
+                .addModifiers(Modifier.PUBLIC)
+                .addField(LIT, "lit", Modifier.PUBLIC)
+                .addField(EXPR, "root", Modifier.PUBLIC);
+        VisitorSpec.VisitorInterfaceAndBase visitor = VisitorSpec.builder(PACKAGE, "Tree")
+                .withVisitingType(expr)
+                .withVisitingType(add)
+                .withVisitingType(lit)
+                .withVisitingType(holder)
+                .withParallelTraversal(1)
+                .build();
+        TypeName log = ParameterizedTypeName.get(List.class, String.class);
+        TypeSpec.Builder recorder = TypeSpec.classBuilder("Recorder")
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(BASE)
+                .addField(FieldSpec.builder(log, "log", Modifier.PUBLIC, Modifier.FINAL)
+                        .initializer("new $T<>()", ArrayList.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("combine")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(BASE, "other")
+                        .addStatement("log.addAll((($N) other).log)", "Recorder")
+                        .build());
+        for (String type : Arrays.asList("Expr", "Add", "Lit", "Holder")) {
+            for (String event : Arrays.asList("enter", "exit")) {
+                recorder.addMethod(MethodSpec.methodBuilder(event + type)
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(ClassName.get(PACKAGE, type), "visited")
+                        .addStatement("log.add($S + (visited == null ? \" null\" : \" \" + visited.getClass().getSimpleName()))", event + type)
+                        .build());
+            }
+        }
+        return GeneratedCode.compile(PACKAGE, expr, add, lit, subLit, holder, visitor.getVisitor(), visitor.getBase(),
+                visitor.getWalker(), visitor.getParallelWalker(), recorder);
+    }
+
+    private static Object tree(GeneratedCode code) throws Exception {
+        Object holder = code.newInstance("Holder");
+        GeneratedCode.set(holder, "lit", code.newInstance("SubLit"));
+        Object add = code.newInstance("Add");
+        GeneratedCode.set(add, "left", code.newInstance("Lit"));
+        GeneratedCode.set(holder, "root", add);
+        return holder;
+    }
+
+    @Test
+    public void walkersVisitAsTheVisitMethodsDo() throws Exception {
+        GeneratedCode code = compileTree();
+        Object holder = tree(code);
+        Object recursive = code.newInstance("Recorder");
+        GeneratedCode.call(holder, "visit", recursive);
+        assertEquals(Arrays.asList("enterHolder Holder",
+                "enterLit SubLit", "exitLit SubLit",
+                "enterAdd Add", "enterLit Lit", "exitLit Lit", "enterExpr null", "exitExpr null", "exitAdd Add",
+                "exitHolder Holder"), GeneratedCode.get(recursive, "log"));
+        Object iterative = code.newInstance("Recorder");
+        GeneratedCode.call(code.newInstance("TreeWalker"), "walk", holder, iterative);
+        assertEquals(GeneratedCode.get(recursive, "log"), GeneratedCode.get(iterative, "log"));
+        Supplier<Object> factory = () -> {
+            try {
+                return code.newInstance("Recorder");
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+        Object parallelWalker = code.load("TreeParallelWalker").getConstructor(Supplier.class).newInstance(factory);
+        Object parallel = GeneratedCode.call(parallelWalker, "walk", holder);
+        assertEquals(GeneratedCode.get(recursive, "log"), GeneratedCode.get(parallel, "log"));
+    }
+
+    @Test
+    public void walkerIsReusable() throws Exception {
+        GeneratedCode code = compileTree();
+        Object walker = code.newInstance("TreeWalker");
+        Object first = code.newInstance("Recorder");
+        Object second = code.newInstance("Recorder");
+        GeneratedCode.call(walker, "walk", tree(code), first);
+        GeneratedCode.call(walker, "walk", tree(code), second);
+        assertEquals(GeneratedCode.get(first, "log"), GeneratedCode.get(second, "log"));
+    }
+}